@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+/**
+ * Internal helper class to convert input object to {@link Boolean}.
+ * Only 'true' and 'false' (case insensitive) are accepted, anything else is not a boolean.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+class BooleanConverter
+        implements Converter<Boolean>
+{
+    private static BooleanConverter INSTANCE;
+
+    static BooleanConverter instance()
+    {
+        if ( INSTANCE == null )
+        {
+            INSTANCE = new BooleanConverter();
+        }
+
+        return INSTANCE;
+    }
+
+    @Override
+    public Boolean convert( Object object )
+    {
+        if ( object == null )
+        {
+            return null;
+        }
+
+        if ( object instanceof Boolean )
+        {
+            return ( Boolean ) object;
+        }
+
+        String value = object.toString().trim();
+        if ( "true".equalsIgnoreCase( value ) )
+        {
+            return Boolean.TRUE;
+        }
+        if ( "false".equalsIgnoreCase( value ) )
+        {
+            return Boolean.FALSE;
+        }
+
+        return null;
+    }
+}
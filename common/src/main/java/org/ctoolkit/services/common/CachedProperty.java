@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The in-process cache entry holding the raw property value along with its already parsed forms.
+ * The value is parsed to the requested type only once per entry lifetime, subsequent reads are served
+ * from the parsed form. Primitive forms are kept unboxed, thus primitive reads do not allocate at all.
+ * <p>
+ * Parsing is idempotent, so concurrent readers may parse the same value at most redundantly,
+ * the parse state is published via volatile field once the parsed value has been set.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+final class CachedProperty
+{
+    private static final byte UNKNOWN = 0;
+
+    private static final byte PARSED = 1;
+
+    private static final byte INVALID = 2;
+
+    private final Object value;
+
+    private volatile Object typed;
+
+    private long longValue;
+
+    private volatile byte longState;
+
+    private double doubleValue;
+
+    private volatile byte doubleState;
+
+    private boolean booleanValue;
+
+    private volatile byte booleanState;
+
+    CachedProperty( Object value )
+    {
+        this.value = checkNotNull( value );
+    }
+
+    /**
+     * Returns the raw property value as it has been cached.
+     *
+     * @return the raw property value
+     */
+    Object value()
+    {
+        return value;
+    }
+
+    /**
+     * Returns the property value converted to the given type. The most recent conversion is remembered.
+     *
+     * @param type      the property value type
+     * @param converter the property type converter
+     * @param <T>       property value type
+     * @return the typed property value or <code>null</code> if the value is not convertible
+     */
+    @SuppressWarnings( value = "unchecked" )
+    <T> T as( Class<T> type, Converter<T> converter )
+    {
+        if ( type.isInstance( value ) )
+        {
+            return ( T ) value;
+        }
+
+        Object converted = typed;
+        if ( !type.isInstance( converted ) )
+        {
+            converted = converter.convert( value );
+            typed = converted;
+        }
+        return ( T ) converted;
+    }
+
+    long asLong( long defaultValue )
+    {
+        byte state = longState;
+        if ( state == UNKNOWN )
+        {
+            Long parsed = value instanceof Long ? ( Long ) value : LongConverter.instance().convert( value );
+            if ( parsed != null )
+            {
+                longValue = parsed;
+            }
+            state = parsed == null ? INVALID : PARSED;
+            longState = state;
+        }
+        return state == PARSED ? longValue : defaultValue;
+    }
+
+    int asInt( int defaultValue )
+    {
+        long parsed = asLong( Long.MIN_VALUE );
+        if ( longState != PARSED || parsed < Integer.MIN_VALUE || parsed > Integer.MAX_VALUE )
+        {
+            return defaultValue;
+        }
+        return ( int ) parsed;
+    }
+
+    double asDouble( double defaultValue )
+    {
+        byte state = doubleState;
+        if ( state == UNKNOWN )
+        {
+            Double parsed = value instanceof Double ? ( Double ) value : DoubleConverter.instance().convert( value );
+            if ( parsed != null )
+            {
+                doubleValue = parsed;
+            }
+            state = parsed == null ? INVALID : PARSED;
+            doubleState = state;
+        }
+        return state == PARSED ? doubleValue : defaultValue;
+    }
+
+    boolean asBoolean( boolean defaultValue )
+    {
+        byte state = booleanState;
+        if ( state == UNKNOWN )
+        {
+            Boolean parsed = BooleanConverter.instance().convert( value );
+            if ( parsed != null )
+            {
+                booleanValue = parsed;
+            }
+            state = parsed == null ? INVALID : PARSED;
+            booleanState = state;
+        }
+        return state == PARSED ? booleanValue : defaultValue;
+    }
+}
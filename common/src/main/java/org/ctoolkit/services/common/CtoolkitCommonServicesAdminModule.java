@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import com.google.inject.servlet.ServletModule;
+
+/**
+ * Install this module if you need to expose the property cache statistics as JSON at {@link #STATISTICS_PATH}.
+ * Secure the path in web.xml, for example:
+ * <pre>
+ * &#60;security-constraint&#62;
+ *     &#60;web-resource-collection&#62;
+ *         &#60;url-pattern&#62;/admin/property/statistics&#60;/url-pattern&#62;
+ *     &#60;/web-resource-collection&#62;
+ *     &#60;auth-constraint&#62;
+ *         &#60;role-name&#62;admin&#60;/role-name&#62;
+ *     &#60;/auth-constraint&#62;
+ * &#60;/security-constraint&#62;
+ * </pre>
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ * @see PropertyStatisticsServlet
+ */
+public class CtoolkitCommonServicesAdminModule
+        extends ServletModule
+{
+    public static final String STATISTICS_PATH = "/admin/property/statistics";
+
+    @Override
+    protected void configureServlets()
+    {
+        serve( STATISTICS_PATH ).with( PropertyStatisticsServlet.class );
+    }
+}
@@ -19,17 +19,26 @@
 package org.ctoolkit.services.common;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
 import com.google.inject.AbstractModule;
 import com.google.inject.Binding;
 import com.google.inject.Injector;
 import com.google.inject.Key;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.multibindings.Multibinder;
+import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import com.google.inject.spi.InstanceBinding;
 import org.ctoolkit.services.guice.CtoolkitServicesAppEngineModule;
 
 import javax.cache.CacheFactory;
 import javax.inject.Singleton;
-import java.util.Collection;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,6 +57,9 @@ public class CtoolkitCommonServicesModule
     protected void configure()
     {
         bind( PropertyService.class ).to( PropertyServiceBean.class ).in( Singleton.class );
+
+        // the optional property cache metrics
+        Multibinder.newSetBinder( binder(), PropertyMetrics.class );
     }
 
     @Provides
@@ -58,26 +70,69 @@ public class CtoolkitCommonServicesModule
         return new ConfigurationMap( injector );
     }
 
+    /**
+     * The configuration map backed by the {@code @Named} String bindings.
+     * Constant (instance) bindings are resolved once at creation into an immutable map, other ones
+     * (provider backed, maybe scoped) are resolved on each access via already looked up binding.
+     * A key not known at creation time falls back to the injector lookup.
+     */
     private static class ConfigurationMap
-            implements Map<String, String>
+            extends AbstractMap<String, String>
     {
         private final Injector injector;
 
+        private final Map<String, String> constants;
+
+        private final Map<String, Provider<String>> providers;
+
         ConfigurationMap( Injector injector )
         {
             this.injector = injector;
-        }
 
-        @Override
-        public int size()
-        {
-            throw new UnsupportedOperationException();
+            ImmutableMap.Builder<String, String> constants = ImmutableMap.builder();
+            ImmutableMap.Builder<String, Provider<String>> providers = ImmutableMap.builder();
+            Set<String> names = new HashSet<>();
+
+            // child injector bindings first, as they take precedence
+            for ( Injector current = injector; current != null; current = current.getParent() )
+            {
+                for ( Binding<?> binding : current.getBindings().values() )
+                {
+                    Key<?> key = binding.getKey();
+                    if ( key.getTypeLiteral().getRawType() != String.class
+                            || !( key.getAnnotation() instanceof Named )
+                            || !names.add( ( ( Named ) key.getAnnotation() ).value() ) )
+                    {
+                        continue;
+                    }
+
+                    String name = ( ( Named ) key.getAnnotation() ).value();
+                    @SuppressWarnings( "unchecked" )
+                    Binding<String> stringBinding = ( Binding<String> ) binding;
+
+                    if ( binding instanceof InstanceBinding )
+                    {
+                        String value = stringBinding.getProvider().get();
+                        if ( value != null )
+                        {
+                            constants.put( name, value );
+                        }
+                    }
+                    else
+                    {
+                        providers.put( name, stringBinding.getProvider() );
+                    }
+                }
+            }
+
+            this.constants = constants.build();
+            this.providers = providers.build();
         }
 
         @Override
-        public boolean isEmpty()
+        public int size()
         {
-            throw new UnsupportedOperationException();
+            return constants.size() + providers.size();
         }
 
         @Override
@@ -89,15 +144,9 @@ public class CtoolkitCommonServicesModule
                 return false;
             }
 
-            Key<String> key = Key.get( String.class, Names.named( property.toString() ) );
-            Binding<String> binding = injector.getExistingBinding( key );
-            return binding != null;
-        }
-
-        @Override
-        public boolean containsValue( Object value )
-        {
-            throw new UnsupportedOperationException();
+            return constants.containsKey( property )
+                    || providers.containsKey( property )
+                    || binding( property.toString() ) != null;
         }
 
         @Override
@@ -109,55 +158,46 @@ public class CtoolkitCommonServicesModule
                 return null;
             }
 
-            Key<String> key = Key.get( String.class, Names.named( property.toString() ) );
-            Binding<String> binding = injector.getExistingBinding( key );
-            return binding == null ? null : binding.getProvider().get();
-        }
-
-        @Override
-        public String put( String key, String value )
-        {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public String remove( Object key )
-        {
-            throw new UnsupportedOperationException();
-        }
+            String value = constants.get( property );
+            if ( value != null )
+            {
+                return value;
+            }
 
-        @SuppressWarnings( "NullableProblems" )
-        @Override
-        public void putAll( Map<? extends String, ? extends String> m )
-        {
-            throw new UnsupportedOperationException();
-        }
+            Provider<String> provider = providers.get( property );
+            if ( provider != null )
+            {
+                return provider.get();
+            }
 
-        @Override
-        public void clear()
-        {
-            throw new UnsupportedOperationException();
+            Binding<String> binding = binding( property.toString() );
+            return binding == null ? null : binding.getProvider().get();
         }
 
         @SuppressWarnings( "NullableProblems" )
         @Override
         public Set<String> keySet()
         {
-            throw new UnsupportedOperationException();
+            return Sets.union( constants.keySet(), providers.keySet() );
         }
 
         @SuppressWarnings( "NullableProblems" )
         @Override
-        public Collection<String> values()
+        public Set<Entry<String, String>> entrySet()
         {
-            throw new UnsupportedOperationException();
+            if ( providers.isEmpty() )
+            {
+                return constants.entrySet();
+            }
+
+            Map<String, String> entries = new HashMap<>( constants );
+            providers.forEach( ( name, provider ) -> entries.put( name, provider.get() ) );
+            return Collections.unmodifiableMap( entries ).entrySet();
         }
 
-        @SuppressWarnings( "NullableProblems" )
-        @Override
-        public Set<Entry<String, String>> entrySet()
+        private Binding<String> binding( String property )
         {
-            throw new UnsupportedOperationException();
+            return injector.getExistingBinding( Key.get( String.class, Names.named( property ) ) );
         }
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Internal helper class to convert input object to {@link Duration}.
+ * The value is expected in ISO-8601 duration format, for example 'PT15M'.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+class DurationConverter
+        implements Converter<Duration>
+{
+    private static DurationConverter INSTANCE;
+
+    static DurationConverter instance()
+    {
+        if ( INSTANCE == null )
+        {
+            INSTANCE = new DurationConverter();
+        }
+
+        return INSTANCE;
+    }
+
+    @Override
+    public Duration convert( Object object )
+    {
+        if ( object == null )
+        {
+            return null;
+        }
+
+        if ( object instanceof Duration )
+        {
+            return ( Duration ) object;
+        }
+
+        try
+        {
+            return Duration.parse( object.toString().trim() );
+        }
+        catch ( DateTimeParseException e )
+        {
+            return null;
+        }
+    }
+}
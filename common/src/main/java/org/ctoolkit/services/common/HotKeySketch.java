@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The Space-Saving sketch of the most frequent (hottest) keys within bounded memory.
+ * At most configured number of keys are tracked, once full the least frequent key is replaced by the new one,
+ * which inherits its count as a possible overestimation (error). The really hot keys stay tracked
+ * with estimated count never lower than the actual one.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+final class HotKeySketch
+{
+    private final int capacity;
+
+    private final Map<String, Counter> counters;
+
+    HotKeySketch( int capacity )
+    {
+        checkArgument( capacity > 0, "Capacity must be positive" );
+        this.capacity = capacity;
+        this.counters = new HashMap<>( capacity * 2 );
+    }
+
+    /**
+     * Increments the count of the given key.
+     *
+     * @param key    the key to be counted
+     * @param weight the increment
+     */
+    synchronized void add( String key, long weight )
+    {
+        Counter counter = counters.get( key );
+        if ( counter != null )
+        {
+            counter.count += weight;
+            return;
+        }
+
+        if ( counters.size() < capacity )
+        {
+            counters.put( key, new Counter( key, weight, 0 ) );
+            return;
+        }
+
+        Counter min = null;
+        for ( Counter candidate : counters.values() )
+        {
+            if ( min == null || candidate.count < min.count )
+            {
+                min = candidate;
+            }
+        }
+
+        counters.remove( min.key );
+        counters.put( key, new Counter( key, min.count + weight, min.count ) );
+    }
+
+    /**
+     * Returns the hottest keys ordered by the estimated count, the hottest first.
+     *
+     * @param limit the maximum number of keys to be returned
+     * @return the hottest keys
+     */
+    synchronized List<PropertyCacheStatistics.HotKey> top( int limit )
+    {
+        List<Counter> sorted = new ArrayList<>( counters.values() );
+        sorted.sort( ( left, right ) -> Long.compare( right.count, left.count ) );
+
+        List<PropertyCacheStatistics.HotKey> top = new ArrayList<>();
+        for ( Counter counter : sorted.subList( 0, Math.min( limit, sorted.size() ) ) )
+        {
+            top.add( new PropertyCacheStatistics.HotKey( counter.key, counter.count, counter.error ) );
+        }
+        return top;
+    }
+
+    private static class Counter
+    {
+        private final String key;
+
+        private final long error;
+
+        private long count;
+
+        Counter( String key, long count, long error )
+        {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import javax.cache.Cache;
+import javax.cache.CacheEntry;
+import javax.cache.CacheListener;
+import javax.cache.CacheStatistics;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The in-process {@link Cache} implementation, bounded by the maximum number of entries
+ * (least recently used are evicted first) with optional time to live of the entries.
+ * Serves as a degraded mode cache once the memcache is not available, see {@link LocalCacheFactory}.
+ * <p>
+ * Unlike memcache the values are not serialized, the cached instance is shared, thus must not be modified.
+ * The listeners are notified synchronously on the calling thread.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+class LocalCache
+        implements Cache
+{
+    private final com.google.common.cache.Cache<Object, LocalCacheEntry> entries;
+
+    private final long ttlMillis;
+
+    private final List<CacheListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger hitCount = new AtomicInteger();
+
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Creates the local cache.
+     *
+     * @param maximumSize the maximum number of the cached entries
+     * @param ttlMillis   the entry time to live in milliseconds, zero for no expiration
+     */
+    LocalCache( long maximumSize, long ttlMillis )
+    {
+        checkArgument( maximumSize > 0, "Maximum size must be positive" );
+        checkArgument( ttlMillis >= 0, "Time to live cannot be negative" );
+
+        this.ttlMillis = ttlMillis;
+
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize( maximumSize );
+        if ( ttlMillis > 0 )
+        {
+            builder.expireAfterWrite( ttlMillis, TimeUnit.MILLISECONDS );
+        }
+
+        RemovalListener<Object, LocalCacheEntry> listener = this::onRemoval;
+        entries = builder.removalListener( listener ).build();
+    }
+
+    @Override
+    public boolean containsKey( Object key )
+    {
+        return entries.getIfPresent( checkNotNull( key ) ) != null;
+    }
+
+    @Override
+    public boolean containsValue( Object value )
+    {
+        for ( LocalCacheEntry entry : entries.asMap().values() )
+        {
+            if ( Objects.equals( entry.getValue(), value ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set entrySet()
+    {
+        return Collections.unmodifiableSet( snapshot().entrySet() );
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    @Override
+    public Set keySet()
+    {
+        return Collections.unmodifiableSet( snapshot().keySet() );
+    }
+
+    @Override
+    @SuppressWarnings( value = "unchecked" )
+    public void putAll( Map map )
+    {
+        map.forEach( this::put );
+    }
+
+    @Override
+    public int size()
+    {
+        // expired entries are removed lazily, do not count them
+        entries.cleanUp();
+        return ( int ) Math.min( entries.size(), Integer.MAX_VALUE );
+    }
+
+    @Override
+    public Collection values()
+    {
+        return Collections.unmodifiableCollection( snapshot().values() );
+    }
+
+    @Override
+    public Object get( Object key )
+    {
+        LocalCacheEntry entry = entries.getIfPresent( checkNotNull( key ) );
+        if ( entry == null )
+        {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+        entry.accessed();
+        return entry.getValue();
+    }
+
+    @Override
+    public Map getAll( Collection keys )
+    {
+        Map<Object, Object> found = new LinkedHashMap<>();
+        for ( Object key : keys )
+        {
+            LocalCacheEntry entry = entries.getIfPresent( checkNotNull( key ) );
+            if ( entry == null )
+            {
+                missCount.incrementAndGet();
+            }
+            else
+            {
+                hitCount.incrementAndGet();
+                entry.accessed();
+                found.put( key, entry.getValue() );
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void load( Object key )
+    {
+        // there is no cache loader
+    }
+
+    @Override
+    public void loadAll( Collection keys )
+    {
+        // there is no cache loader
+    }
+
+    @Override
+    public Object peek( Object key )
+    {
+        LocalCacheEntry entry = entries.getIfPresent( checkNotNull( key ) );
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public Object put( Object key, Object value )
+    {
+        long now = System.currentTimeMillis();
+        LocalCacheEntry entry = new LocalCacheEntry( checkNotNull( key ),
+                value,
+                now,
+                ttlMillis > 0 ? now + ttlMillis : Long.MAX_VALUE,
+                version.incrementAndGet() );
+
+        LocalCacheEntry previous = entries.asMap().put( key, entry );
+        listeners.forEach( l -> l.onPut( value ) );
+
+        return previous == null ? null : previous.getValue();
+    }
+
+    @Override
+    public CacheEntry getCacheEntry( Object key )
+    {
+        return entries.getIfPresent( checkNotNull( key ) );
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics()
+    {
+        return new LocalCacheStatistics();
+    }
+
+    @Override
+    public Object remove( Object key )
+    {
+        LocalCacheEntry previous = entries.asMap().remove( checkNotNull( key ) );
+        if ( previous == null )
+        {
+            return null;
+        }
+
+        listeners.forEach( l -> l.onRmove( key ) );
+        return previous.getValue();
+    }
+
+    @Override
+    public void clear()
+    {
+        entries.invalidateAll();
+        listeners.forEach( CacheListener::onClear );
+    }
+
+    @Override
+    public void evict()
+    {
+        // removes expired entries
+        entries.cleanUp();
+    }
+
+    @Override
+    public void addListener( CacheListener listener )
+    {
+        listeners.add( checkNotNull( listener ) );
+    }
+
+    @Override
+    public void removeListener( CacheListener listener )
+    {
+        listeners.remove( listener );
+    }
+
+    private void onRemoval( RemovalNotification<Object, LocalCacheEntry> notification )
+    {
+        // expired or evicted because of the size, explicit removals are notified directly
+        if ( notification.wasEvicted() )
+        {
+            listeners.forEach( l -> l.onEvict( notification.getKey() ) );
+        }
+    }
+
+    private Map<Object, Object> snapshot()
+    {
+        Map<Object, Object> snapshot = new LinkedHashMap<>();
+        entries.asMap().forEach( ( key, entry ) -> snapshot.put( key, entry.getValue() ) );
+        return snapshot;
+    }
+
+    /**
+     * The live view of the cache statistics.
+     */
+    private class LocalCacheStatistics
+            implements CacheStatistics
+    {
+        @Override
+        public void clearStatistics()
+        {
+            hitCount.set( 0 );
+            missCount.set( 0 );
+        }
+
+        @Override
+        public int getCacheHits()
+        {
+            return hitCount.get();
+        }
+
+        @Override
+        public int getCacheMisses()
+        {
+            return missCount.get();
+        }
+
+        @Override
+        public int getObjectCount()
+        {
+            return size();
+        }
+
+        @Override
+        public int getStatisticsAccuracy()
+        {
+            return STATISTICS_ACCURACY_GUARANTEED;
+        }
+    }
+
+    /**
+     * The cached entry, the value may be <code>null</code>.
+     */
+    private static class LocalCacheEntry
+            implements CacheEntry
+    {
+        private final Object key;
+
+        private final Object value;
+
+        private final long creationTime;
+
+        private final long expirationTime;
+
+        private final long version;
+
+        private final AtomicLong hits = new AtomicLong();
+
+        private volatile long lastAccessTime;
+
+        LocalCacheEntry( Object key, Object value, long creationTime, long expirationTime, long version )
+        {
+            this.key = key;
+            this.value = value;
+            this.creationTime = creationTime;
+            this.expirationTime = expirationTime;
+            this.version = version;
+            this.lastAccessTime = creationTime;
+        }
+
+        void accessed()
+        {
+            hits.incrementAndGet();
+            lastAccessTime = System.currentTimeMillis();
+        }
+
+        @Override
+        public long getCost()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getCreationTime()
+        {
+            return creationTime;
+        }
+
+        @Override
+        public long getExpirationTime()
+        {
+            return expirationTime;
+        }
+
+        @Override
+        public long getHits()
+        {
+            return hits.get();
+        }
+
+        @Override
+        public long getLastAccessTime()
+        {
+            return lastAccessTime;
+        }
+
+        @Override
+        public long getLastUpdateTime()
+        {
+            return creationTime;
+        }
+
+        @Override
+        public long getVersion()
+        {
+            return version;
+        }
+
+        @Override
+        public boolean isValid()
+        {
+            return System.currentTimeMillis() < expirationTime;
+        }
+
+        @Override
+        public Object getKey()
+        {
+            return key;
+        }
+
+        @Override
+        public Object getValue()
+        {
+            return value;
+        }
+
+        @Override
+        public Object setValue( Object value )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o ) return true;
+            if ( !( o instanceof Map.Entry ) ) return false;
+            Map.Entry<?, ?> that = ( Map.Entry<?, ?> ) o;
+            return Objects.equals( key, that.getKey() ) && Objects.equals( value, that.getValue() );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode( key ) ^ Objects.hashCode( value );
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import com.google.appengine.api.memcache.stdimpl.GCacheFactory;
+
+import javax.cache.Cache;
+import javax.cache.CacheFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link CacheFactory} creating in-process, bounded caches instead of memcache backed ones.
+ * Bind it in place of the default one in development or tests, for example
+ * <pre>
+ * bind( CacheFactory.class ).to( LocalCacheFactory.class );
+ * </pre>
+ * Supported cache properties:
+ * <ul>
+ * <li>{@link GCacheFactory#EXPIRATION_DELTA} the entry time to live in seconds</li>
+ * <li>{@link GCacheFactory#EXPIRATION_DELTA_MILLIS} the entry time to live in milliseconds</li>
+ * <li>{@link #MAXIMUM_SIZE} the maximum number of entries, default {@value #DEFAULT_MAXIMUM_SIZE}</li>
+ * </ul>
+ * Each created cache is a standalone instance, the cached values are not shared between them.
+ * <p>
+ * It's not bound by default, neither in development. Both the development server and the App Engine
+ * testing helper provide the local memcache shared by all of the caches, which the property change
+ * propagation across instances relies on. Bind it where no memcache is available at all.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class LocalCacheFactory
+        implements CacheFactory
+{
+    /**
+     * The cache property key of the maximum number of entries.
+     */
+    public static final String MAXIMUM_SIZE = "ctoolkit.cache.local.size";
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    @Override
+    public Cache createCache( Map properties )
+    {
+        long size = DEFAULT_MAXIMUM_SIZE;
+        long ttlMillis = 0;
+
+        if ( properties != null )
+        {
+            Object value = properties.get( MAXIMUM_SIZE );
+            if ( value instanceof Number )
+            {
+                size = ( ( Number ) value ).longValue();
+            }
+
+            value = properties.get( GCacheFactory.EXPIRATION_DELTA );
+            if ( value instanceof Number )
+            {
+                ttlMillis = TimeUnit.SECONDS.toMillis( ( ( Number ) value ).longValue() );
+            }
+
+            value = properties.get( GCacheFactory.EXPIRATION_DELTA_MILLIS );
+            if ( value instanceof Number )
+            {
+                ttlMillis = ( ( Number ) value ).longValue();
+            }
+        }
+
+        return new LocalCache( size, ttlMillis );
+    }
+}
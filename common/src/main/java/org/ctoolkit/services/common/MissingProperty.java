@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import java.io.Serializable;
+
+/**
+ * The cache entry marking the property as not found in the datastore (or without a value).
+ * Cached in place of the property value to avoid repeated datastore reads of absent properties.
+ * The entry carries its own expiration as the memcache has no per entry time to live.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+final class MissingProperty
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long expiresAt;
+
+    /**
+     * Creates the marker valid for the given number of seconds from now.
+     *
+     * @param ttl the time to live in seconds
+     */
+    MissingProperty( long ttl )
+    {
+        this.expiresAt = System.currentTimeMillis() + ttl * 1000;
+    }
+
+    /**
+     * Returns true if the marker is no longer valid, the property must be loaded from the datastore again.
+     *
+     * @return true if expired
+     */
+    boolean isExpired()
+    {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MissingProperty{" +
+                "expiresAt=" + expiresAt +
+                '}';
+    }
+}
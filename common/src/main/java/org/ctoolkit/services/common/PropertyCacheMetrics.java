@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The built-in property cache metrics collector. Collects the counters per cache tier, the datastore load
+ * latency histogram, the hottest keys and the in-process cache evictions. Each event is forwarded
+ * to the application provided {@link PropertyMetrics} too.
+ * <p>
+ * To keep the read path cheap only a sample of the reads is counted by the hottest keys sketch,
+ * thus the reported counts are estimations.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+final class PropertyCacheMetrics
+        implements PropertyMetrics
+{
+    private static final Logger logger = LoggerFactory.getLogger( PropertyCacheMetrics.class );
+
+    /**
+     * The upper bounds (exclusive) of the datastore latency histogram buckets in milliseconds.
+     */
+    private static final long[] LATENCY_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private static final int HOT_KEY_SAMPLE_RATE = 16;
+
+    private static final int HOT_KEY_CAPACITY = 100;
+
+    private static final int HOT_KEY_LIMIT = 10;
+
+    private final Set<PropertyMetrics> delegates;
+
+    private final LongAdder localHitCount = new LongAdder();
+
+    private final LongAdder localMissCount = new LongAdder();
+
+    private final LongAdder memcacheHitCount = new LongAdder();
+
+    private final LongAdder memcacheMissCount = new LongAdder();
+
+    private final LongAdder negativeHitCount = new LongAdder();
+
+    private final LongAdder datastoreLoadCount = new LongAdder();
+
+    private final LongAdder[] latency = new LongAdder[LATENCY_BOUNDS.length + 1];
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final LongAdder expirationCount = new LongAdder();
+
+    private final HotKeySketch hotKeys = new HotKeySketch( HOT_KEY_CAPACITY );
+
+    PropertyCacheMetrics( Set<PropertyMetrics> delegates )
+    {
+        this.delegates = delegates;
+        for ( int index = 0; index < latency.length; index++ )
+        {
+            latency[index] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onHit( @Nonnull Tier tier, @Nonnull String key )
+    {
+        if ( tier == Tier.LOCAL )
+        {
+            localHitCount.increment();
+            sample( key );
+        }
+        else
+        {
+            memcacheHitCount.increment();
+        }
+        forward( metrics -> metrics.onHit( tier, key ) );
+    }
+
+    @Override
+    public void onMiss( @Nonnull Tier tier, @Nonnull String key )
+    {
+        if ( tier == Tier.LOCAL )
+        {
+            localMissCount.increment();
+            sample( key );
+        }
+        else
+        {
+            memcacheMissCount.increment();
+        }
+        forward( metrics -> metrics.onMiss( tier, key ) );
+    }
+
+    @Override
+    public void onNegativeHit( @Nonnull String key )
+    {
+        negativeHitCount.increment();
+        forward( metrics -> metrics.onNegativeHit( key ) );
+    }
+
+    @Override
+    public void onDatastoreLoad( int count, long nanos )
+    {
+        datastoreLoadCount.add( count );
+
+        long millis = TimeUnit.NANOSECONDS.toMillis( nanos );
+        int index = 0;
+        while ( index < LATENCY_BOUNDS.length && millis >= LATENCY_BOUNDS[index] )
+        {
+            index++;
+        }
+        latency[index].increment();
+
+        forward( metrics -> metrics.onDatastoreLoad( count, nanos ) );
+    }
+
+    @Override
+    public void onEviction( @Nonnull String key, boolean expired )
+    {
+        if ( expired )
+        {
+            expirationCount.increment();
+        }
+        else
+        {
+            evictionCount.increment();
+        }
+        forward( metrics -> metrics.onEviction( key, expired ) );
+    }
+
+    /**
+     * Returns the current snapshot of the collected metrics.
+     *
+     * @return the property cache statistics
+     */
+    PropertyCacheStatistics snapshot()
+    {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for ( int index = 0; index < LATENCY_BOUNDS.length; index++ )
+        {
+            histogram.put( "<" + LATENCY_BOUNDS[index] + "ms", latency[index].sum() );
+        }
+        histogram.put( ">=" + LATENCY_BOUNDS[LATENCY_BOUNDS.length - 1] + "ms", latency[LATENCY_BOUNDS.length].sum() );
+
+        return new PropertyCacheStatistics( localHitCount.sum(),
+                localMissCount.sum(),
+                memcacheHitCount.sum(),
+                memcacheMissCount.sum(),
+                negativeHitCount.sum(),
+                datastoreLoadCount.sum(),
+                histogram,
+                evictionCount.sum(),
+                expirationCount.sum(),
+                hotKeys.top( HOT_KEY_LIMIT ) );
+    }
+
+    private void sample( String key )
+    {
+        if ( ThreadLocalRandom.current().nextInt( HOT_KEY_SAMPLE_RATE ) == 0 )
+        {
+            hotKeys.add( key, HOT_KEY_SAMPLE_RATE );
+        }
+    }
+
+    private void forward( Consumer<PropertyMetrics> event )
+    {
+        if ( delegates.isEmpty() )
+        {
+            return;
+        }
+
+        for ( PropertyMetrics metrics : delegates )
+        {
+            try
+            {
+                event.accept( metrics );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Calling of the property metrics has failed, ignoring ..", e );
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The immutable snapshot of the {@link PropertyService} cache counters, taken per cache tier:
+ * <ul>
+ * <li><b>local</b> - the in-process cache, first to be asked, no RPC involved</li>
+ * <li><b>memcache</b> - the shared cache, asked only on local cache miss</li>
+ * </ul>
+ * along with the datastore load latency histogram, the in-process cache evictions
+ * and the estimated hottest property keys.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class PropertyCacheStatistics
+{
+    private final long localHitCount;
+
+    private final long localMissCount;
+
+    private final long memcacheHitCount;
+
+    private final long memcacheMissCount;
+
+    private final long negativeHitCount;
+
+    private final long datastoreLoadCount;
+
+    private final Map<String, Long> datastoreLatency;
+
+    private final long localEvictionCount;
+
+    private final long localExpirationCount;
+
+    private final List<HotKey> hotKeys;
+
+    PropertyCacheStatistics( long localHitCount,
+                             long localMissCount,
+                             long memcacheHitCount,
+                             long memcacheMissCount,
+                             long negativeHitCount,
+                             long datastoreLoadCount,
+                             Map<String, Long> datastoreLatency,
+                             long localEvictionCount,
+                             long localExpirationCount,
+                             List<HotKey> hotKeys )
+    {
+        this.localHitCount = localHitCount;
+        this.localMissCount = localMissCount;
+        this.memcacheHitCount = memcacheHitCount;
+        this.memcacheMissCount = memcacheMissCount;
+        this.negativeHitCount = negativeHitCount;
+        this.datastoreLoadCount = datastoreLoadCount;
+        this.datastoreLatency = Collections.unmodifiableMap( datastoreLatency );
+        this.localEvictionCount = localEvictionCount;
+        this.localExpirationCount = localExpirationCount;
+        this.hotKeys = Collections.unmodifiableList( hotKeys );
+    }
+
+    /**
+     * Returns the number of property reads served by the local (in-process) cache.
+     *
+     * @return the local cache hit count
+     */
+    public long getLocalHitCount()
+    {
+        return localHitCount;
+    }
+
+    /**
+     * Returns the number of property reads not found in the local (in-process) cache.
+     *
+     * @return the local cache miss count
+     */
+    public long getLocalMissCount()
+    {
+        return localMissCount;
+    }
+
+    /**
+     * Returns the number of property reads served by the memcache.
+     *
+     * @return the memcache hit count
+     */
+    public long getMemcacheHitCount()
+    {
+        return memcacheHitCount;
+    }
+
+    /**
+     * Returns the number of property reads not found in the memcache, thus loaded from the datastore.
+     *
+     * @return the memcache miss count
+     */
+    public long getMemcacheMissCount()
+    {
+        return memcacheMissCount;
+    }
+
+    /**
+     * Returns the number of property reads served as absent by the cached missing property marker
+     * (either tier), with no datastore read.
+     *
+     * @return the negative cache hit count
+     */
+    public long getNegativeHitCount()
+    {
+        return negativeHitCount;
+    }
+
+    /**
+     * Returns the number of properties loaded from the datastore, each property of a batch get is counted.
+     *
+     * @return the datastore load count
+     */
+    public long getDatastoreLoadCount()
+    {
+        return datastoreLoadCount;
+    }
+
+    /**
+     * Returns the datastore load latency histogram, the number of datastore calls per latency bucket.
+     * The bucket is labeled by its upper bound, for example '&lt;10ms', the last one by its lower bound.
+     *
+     * @return the datastore load latency histogram ordered by latency
+     */
+    public Map<String, Long> getDatastoreLatency()
+    {
+        return datastoreLatency;
+    }
+
+    /**
+     * Returns the number of properties removed from the local (in-process) cache because of its size limit.
+     *
+     * @return the local cache eviction count
+     */
+    public long getLocalEvictionCount()
+    {
+        return localEvictionCount;
+    }
+
+    /**
+     * Returns the number of properties removed from the local (in-process) cache once expired.
+     *
+     * @return the local cache expiration count
+     */
+    public long getLocalExpirationCount()
+    {
+        return localExpirationCount;
+    }
+
+    /**
+     * Returns the most frequently read property keys, the hottest first.
+     *
+     * @return the hottest property keys
+     */
+    public List<HotKey> getHotKeys()
+    {
+        return hotKeys;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PropertyCacheStatistics{" +
+                "localHitCount=" + localHitCount +
+                ", localMissCount=" + localMissCount +
+                ", memcacheHitCount=" + memcacheHitCount +
+                ", memcacheMissCount=" + memcacheMissCount +
+                ", negativeHitCount=" + negativeHitCount +
+                ", datastoreLoadCount=" + datastoreLoadCount +
+                ", datastoreLatency=" + datastoreLatency +
+                ", localEvictionCount=" + localEvictionCount +
+                ", localExpirationCount=" + localExpirationCount +
+                ", hotKeys=" + hotKeys +
+                '}';
+    }
+
+    /**
+     * The frequently read property key with its estimated read count.
+     */
+    public static class HotKey
+    {
+        private final String key;
+
+        private final long count;
+
+        private final long error;
+
+        HotKey( String key, long count, long error )
+        {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * Returns the property key.
+         *
+         * @return the property key
+         */
+        public String getKey()
+        {
+            return key;
+        }
+
+        /**
+         * Returns the estimated number of reads, never lower than the actual one (sampling aside).
+         *
+         * @return the estimated read count
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the maximum overestimation of the read count.
+         *
+         * @return the read count error
+         */
+        public long getError()
+        {
+            return error;
+        }
+
+        @Override
+        public String toString()
+        {
+            return key + "=" + count;
+        }
+    }
+}
@@ -49,6 +49,36 @@ public class PropertyConfig
      */
     private static final String TEST_APP_ID = "appId.test";
 
+    /**
+     * Binding property for needs of the DI frameworks.
+     */
+    private static final String LOCAL_CACHE_TTL = "cache.local.ttl";
+
+    /**
+     * Binding property for needs of the DI frameworks.
+     */
+    private static final String LOCAL_CACHE_SIZE = "cache.local.size";
+
+    /**
+     * Binding property for needs of the DI frameworks.
+     */
+    private static final String NEGATIVE_CACHE_TTL = "cache.negative.ttl";
+
+    /**
+     * Binding property for needs of the DI frameworks.
+     */
+    private static final String GENERATION_CHECK_INTERVAL = "cache.generation.interval";
+
+    /**
+     * Binding property for needs of the DI frameworks.
+     */
+    private static final String REFRESH_AHEAD = "cache.refresh";
+
+    /**
+     * Binding property for needs of the DI frameworks.
+     */
+    private static final String WRITE_BEHIND = "write.behind";
+
     /**
      * Creates empty configuration instance.
      */
@@ -101,6 +131,107 @@ public class PropertyConfig
         return this;
     }
 
+    /**
+     * Sets the time to live in seconds 'service.property.cache.local.ttl' property of the in-process
+     * property cache, the cache in front of the memcache. Zero turns the in-process cache off.
+     *
+     * @param seconds the time to live in seconds, measured since the value has been cached
+     * @return this instance to chain
+     */
+    public PropertyConfig setLocalCacheTtl( long seconds )
+    {
+        if ( seconds >= 0 )
+        {
+            setProperty( SERVICE_ATTR + LOCAL_CACHE_TTL, String.valueOf( seconds ) );
+        }
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of properties 'service.property.cache.local.size' property
+     * to be kept in the in-process property cache at once. Zero turns the in-process cache off.
+     *
+     * @param size the maximum number of cached properties
+     * @return this instance to chain
+     */
+    public PropertyConfig setLocalCacheSize( long size )
+    {
+        if ( size >= 0 )
+        {
+            setProperty( SERVICE_ATTR + LOCAL_CACHE_SIZE, String.valueOf( size ) );
+        }
+        return this;
+    }
+
+    /**
+     * Sets the time to live in seconds 'service.property.cache.negative.ttl' property of the cached
+     * marker of an absent property (not found in datastore). Zero turns the negative caching off.
+     *
+     * @param seconds the time to live in seconds, measured since the marker has been cached
+     * @return this instance to chain
+     */
+    public PropertyConfig setNegativeCacheTtl( long seconds )
+    {
+        if ( seconds >= 0 )
+        {
+            setProperty( SERVICE_ATTR + NEGATIVE_CACHE_TTL, String.valueOf( seconds ) );
+        }
+        return this;
+    }
+
+    /**
+     * Sets the interval in seconds 'service.property.cache.generation.interval' property, how often
+     * the global property generation counter will be checked to find out whether any property has been changed
+     * (by any instance). The in-process cache will be invalidated if so. Zero turns the check off.
+     *
+     * @param seconds the interval in seconds between the two checks
+     * @return this instance to chain
+     */
+    public PropertyConfig setGenerationCheckInterval( long seconds )
+    {
+        if ( seconds >= 0 )
+        {
+            setProperty( SERVICE_ATTR + GENERATION_CHECK_INTERVAL, String.valueOf( seconds ) );
+        }
+        return this;
+    }
+
+    /**
+     * Sets the refresh-ahead time in seconds 'service.property.cache.refresh' property. The in-process cached
+     * property older than this time will be reloaded by the first reader, while concurrent readers are still
+     * served the current value. Must be lower than in-process cache TTL,
+     * see {@link #setLocalCacheTtl(long)}. Zero (default) turns the refresh-ahead off.
+     *
+     * @param seconds the time in seconds measured since the value has been cached
+     * @return this instance to chain
+     */
+    public PropertyConfig setRefreshAhead( long seconds )
+    {
+        if ( seconds >= 0 )
+        {
+            setProperty( SERVICE_ATTR + REFRESH_AHEAD, String.valueOf( seconds ) );
+        }
+        return this;
+    }
+
+    /**
+     * Sets the write-behind window in seconds 'service.property.write.behind' property. Property changes
+     * are cached immediately, but written to the datastore deferred, coalesced within the window,
+     * by a single batch put. Unchanged values are not written at all. Zero (default) turns write-behind off,
+     * each change is written immediately.
+     *
+     * @param seconds the write-behind window in seconds
+     * @return this instance to chain
+     */
+    public PropertyConfig setWriteBehind( long seconds )
+    {
+        if ( seconds >= 0 )
+        {
+            setProperty( SERVICE_ATTR + WRITE_BEHIND, String.valueOf( seconds ) );
+        }
+        return this;
+    }
+
     private boolean isNullOrEmpty( String string )
     {
         return string == null || string.length() == 0;
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The property cache instrumentation callback interface, notified on each property cache access.
+ * Implement it to export the property cache metrics to your monitoring system.
+ * The built-in counters are always collected, see {@link PropertyService#getCacheStatistics()}.
+ * In order to be notified bind <code>PropertyMetrics</code> in guice module as following:
+ * <pre>
+ * Multibinder&#60;PropertyMetrics&#62; multibinder = Multibinder.newSetBinder( binder(), PropertyMetrics.class );
+ * multibinder.addBinding().to( PropertyMetricsImpl.class );
+ * </pre>
+ * Callbacks are executed synchronously on the reading thread, thus must be cheap and must not block.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public interface PropertyMetrics
+{
+    /**
+     * Called once the property has been found in the given cache tier.
+     *
+     * @param tier the cache tier
+     * @param key  the property key
+     */
+    void onHit( @Nonnull Tier tier, @Nonnull String key );
+
+    /**
+     * Called once the property has not been found in the given cache tier.
+     *
+     * @param tier the cache tier
+     * @param key  the property key
+     */
+    void onMiss( @Nonnull Tier tier, @Nonnull String key );
+
+    /**
+     * Called once the property has been served as absent by the cached missing property marker.
+     *
+     * @param key the property key
+     */
+    void onNegativeHit( @Nonnull String key );
+
+    /**
+     * Called right after the properties have been loaded from the datastore.
+     *
+     * @param count the number of properties loaded by a single datastore call
+     * @param nanos the datastore call duration in nanoseconds
+     */
+    void onDatastoreLoad( int count, long nanos );
+
+    /**
+     * Called once the property has been removed from the in-process cache by the cache itself.
+     *
+     * @param key     the property key
+     * @param expired true if time to live has elapsed, false if removed because of the cache size limit
+     */
+    void onEviction( @Nonnull String key, boolean expired );
+
+    /**
+     * The property cache tier.
+     */
+    enum Tier
+    {
+        /**
+         * The in-process cache, first to be asked.
+         */
+        LOCAL,
+
+        /**
+         * The shared memcache, asked on in-process cache miss.
+         */
+        MEMCACHE
+    }
+}
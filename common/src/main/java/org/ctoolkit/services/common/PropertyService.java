@@ -18,7 +18,11 @@
 
 package org.ctoolkit.services.common;
 
+import javax.annotation.Nonnull;
 import javax.cache.Cache;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * The set of convenient methods to handle application properties.
@@ -32,8 +36,8 @@ public interface PropertyService
     /**
      * Creates a Cache instance using the namespace parameter with default configuration.
      * <p>
-     * Returns the fake Cache instance in case of the Cache instance creation failure (logged) with no real cache
-     * functionality.
+     * Returns the bounded in-process Cache instance with short time to live in case of the Cache instance
+     * creation failure (logged), thus properties are still being cached within the instance.
      * <p>
      * Note:
      * The maximum size of a cached data value is 1 MiB (2^20 bytes) minus the size of the key minus
@@ -95,6 +99,125 @@ public interface PropertyService
      */
     void setInteger( String key, Integer value );
 
+    /**
+     * Return property as Long for specified property key.
+     *
+     * @param key property key
+     * @return property as Long
+     */
+    Long getLong( String key );
+
+    /**
+     * Set property as Long for specified key
+     *
+     * @param key   property key
+     * @param value property value
+     */
+    void setLong( String key, Long value );
+
+    /**
+     * Return property as Boolean for specified property key.
+     * Only 'true' and 'false' (case insensitive) values are recognized.
+     *
+     * @param key property key
+     * @return property as Boolean
+     */
+    Boolean getBoolean( String key );
+
+    /**
+     * Set property as Boolean for specified key
+     *
+     * @param key   property key
+     * @param value property value
+     */
+    void setBoolean( String key, Boolean value );
+
+    /**
+     * Return property as Duration for specified property key.
+     * The value is expected in ISO-8601 duration format, for example 'PT15M'.
+     *
+     * @param key property key
+     * @return property as Duration
+     */
+    Duration getDuration( String key );
+
+    /**
+     * Set property as Duration for specified key, stored in ISO-8601 duration format.
+     *
+     * @param key   property key
+     * @param value property value
+     */
+    void setDuration( String key, Duration value );
+
+    /**
+     * Return property as primitive int for specified property key.
+     * The property value is parsed once per cache entry, subsequent calls are served without conversion.
+     *
+     * @param key          property key
+     * @param defaultValue the value to be returned if property does not exist or is not an int
+     * @return property as int
+     */
+    int getInt( String key, int defaultValue );
+
+    /**
+     * Return property as primitive long for specified property key.
+     * The property value is parsed once per cache entry, subsequent calls are served without conversion.
+     *
+     * @param key          property key
+     * @param defaultValue the value to be returned if property does not exist or is not a long
+     * @return property as long
+     */
+    long getLong( String key, long defaultValue );
+
+    /**
+     * Return property as primitive double for specified property key.
+     * The property value is parsed once per cache entry, subsequent calls are served without conversion.
+     *
+     * @param key          property key
+     * @param defaultValue the value to be returned if property does not exist or is not a double
+     * @return property as double
+     */
+    double getDouble( String key, double defaultValue );
+
+    /**
+     * Return property as primitive boolean for specified property key.
+     * The property value is parsed once per cache entry, subsequent calls are served without conversion.
+     *
+     * @param key          property key
+     * @param defaultValue the value to be returned if property does not exist or is not a boolean
+     * @return property as boolean
+     */
+    boolean getBoolean( String key, boolean defaultValue );
+
+    /**
+     * Returns the properties for specified property keys at once, all of them converted to the given type.
+     * Cached properties are retrieved in a single cache round trip, the rest of them (not cached)
+     * by a single batch datastore get. Loaded properties are cached then.
+     * <p>
+     * Supported types are {@link String}, {@link Integer}, {@link Long}, {@link Double}, {@link Boolean}
+     * and {@link Duration}.
+     *
+     * @param keys the property keys
+     * @param type the type of the property values
+     * @param <T>  the property value type
+     * @return the map of property values, a property that does not exist is not present in the map
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    <T> Map<String, T> getAll( @Nonnull Collection<String> keys, @Nonnull Class<T> type );
+
+    /**
+     * Writes all of the pending (deferred) property changes to the datastore by a single batch put.
+     * Relevant only if write-behind mode is turned on, otherwise changes are written immediately.
+     */
+    void flush();
+
+    /**
+     * Returns the current snapshot of the property cache counters, taken per cache tier.
+     *
+     * @return the property cache statistics
+     */
+    PropertyCacheStatistics getCacheStatistics();
+
     /**
      * Returns <code>true</code> if current application is running marked as PRODUCTION environment.
      * That means on exactly defined App Engine AppId, otherwise returns <code>false</code>.
@@ -18,23 +18,52 @@
 
 package org.ctoolkit.services.common;
 
+import com.google.appengine.api.LifecycleManager;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.Text;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
 import com.google.appengine.api.utils.SystemProperty;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.ctoolkit.services.common.PropertyMetrics.Tier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnull;
 import javax.cache.Cache;
 import javax.cache.CacheException;
 import javax.cache.CacheFactory;
 import javax.inject.Inject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Property service implementation of {@link PropertyService} for App Engine.
@@ -44,6 +73,40 @@ import java.util.Map;
  * <li>Development: {@link #isDevelopmentEnvironment()} returns true</li>
  * <li>App Engine: {@link #isTestEnvironment()} returns true</li>
  * </ul>
+ * Properties are cached in two tiers. The bounded in-process cache with time to live is being asked first,
+ * the memcache only on its miss. Configure the in-process cache via
+ * {@link PropertyConfig#setLocalCacheTtl(long)} (default 60 seconds)
+ * and {@link PropertyConfig#setLocalCacheSize(long)} (default 1000 properties).
+ * <p>
+ * Absent properties are cached in both tiers too, with its own shorter time to live configured via
+ * {@link PropertyConfig#setNegativeCacheTtl(long)} (default 30 seconds). Thus a missing property costs
+ * a single datastore read per time to live window.
+ * <p>
+ * Any property change bumps the global property generation counter (atomic memcache counter,
+ * the datastore entity is incremented only as a fallback if the memcache is not available).
+ * Each instance checks the counter once per interval configured via
+ * {@link PropertyConfig#setGenerationCheckInterval(long)} (default 5 seconds) and invalidates its in-process
+ * cache once the counter has moved. Thus property changes are propagated across instances almost instantly.
+ * <p>
+ * Concurrent reads of the same not cached property are loaded only once, other readers wait for the result.
+ * Optionally, refresh-ahead configured via {@link PropertyConfig#setRefreshAhead(long)} (off by default)
+ * reloads the in-process cached property once it is older than configured time. The reload is executed
+ * by the first reader within the request thread, while concurrent readers are still served the current value.
+ * It must be lower than in-process cache TTL.
+ * <p>
+ * Optional write-behind mode configured via {@link PropertyConfig#setWriteBehind(long)} (off by default)
+ * caches the property change immediately, but the data-store write is deferred. Changes of the same property
+ * within the configured window are coalesced, unchanged values are skipped at all, and all of them are written
+ * by a single batch put once the window has elapsed (checked while accessing properties), or on {@link #flush()}.
+ * The App Engine shutdown hook calling {@link #flush()} is being registered in this mode. If your application
+ * sets its own shutdown hook (it replaces this one), make sure it calls {@link #flush()} too.
+ * <p>
+ * The in-process cache entry keeps the property value already parsed to the requested type,
+ * thus hot reads, especially the primitive ones like {@link #getInt(String, int)}, are served without
+ * repeated conversion or boxing.
+ * <p>
+ * The cache access is instrumented, see {@link #getCacheStatistics()}. Bind your own {@link PropertyMetrics}
+ * to export the metrics.
  *
  * @author <a href="mailto:jozef.pohorelec@ctoolkit.org">Jozef Pohorelec</a>
  * @author <a href="mailto:aurel.medvegy@ctoolkit.org">Aurel Medvegy</a>
@@ -57,27 +120,107 @@ class PropertyServiceBean
 
     private static final String ENTITY_PROPERTY_VALUE = "value";
 
+    private static final long DEFAULT_LOCAL_CACHE_TTL = 60;
+
+    private static final long DEFAULT_LOCAL_CACHE_SIZE = 1000;
+
+    private static final long DEFAULT_NEGATIVE_CACHE_TTL = 30;
+
+    private static final long DEFAULT_GENERATION_CHECK_INTERVAL = 5;
+
+    private static final String ENTITY_GENERATION = "PropertyGeneration";
+
+    private static final String ENTITY_GENERATION_NAME = "generation";
+
+    private static final String GENERATION_CACHE_KEY = ENTITY_GENERATION + "::" + ENTITY_GENERATION_NAME;
+
+    private static final int GENERATION_BUMP_RETRIES = 3;
+
+    private static final long FALLBACK_CACHE_SIZE = 10000;
+
+    private static final long FALLBACK_CACHE_TTL = 60;
+
+    /**
+     * The pending property change with null value, as concurrent map does not allow null values.
+     */
+    private static final Object NULL_VALUE = new Object();
+
     private final CacheFactory factory;
 
     private DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
 
+    private MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+
     private Cache cache;
 
+    private final LoadingCache<String, Object> local;
+
+    private final PropertyCacheMetrics metrics;
+
+    private final long negativeTtl;
+
+    private final long generationInterval;
+
+    private final AtomicLong nextGenerationCheck = new AtomicLong();
+
+    private volatile long lastGeneration = -1;
+
+    private final long writeBehind;
+
+    private final Map<String, Object> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong flushDeadline = new AtomicLong();
+
     private boolean isTestEnvironment = false;
 
     private boolean isProductionEnvironment = false;
 
     private boolean isDevelopmentEnvironment = false;
 
-    @Inject
     PropertyServiceBean( CacheFactory factory, @Configuration Map<String, String> configuration )
+    {
+        this( factory, configuration, Collections.emptySet() );
+    }
+
+    @Inject
+    PropertyServiceBean( CacheFactory factory,
+                         @Configuration Map<String, String> configuration,
+                         Set<PropertyMetrics> metrics )
     {
         this.factory = factory;
+        this.metrics = new PropertyCacheMetrics( metrics );
         cache = create();
 
         String productionAppId = configuration.get( "service.property.appId.production" );
         String testAppId = configuration.get( "service.property.appId.test" );
 
+        long localTtl = getLong( configuration, "service.property.cache.local.ttl", DEFAULT_LOCAL_CACHE_TTL );
+        long localSize = getLong( configuration, "service.property.cache.local.size", DEFAULT_LOCAL_CACHE_SIZE );
+        negativeTtl = getLong( configuration, "service.property.cache.negative.ttl", DEFAULT_NEGATIVE_CACHE_TTL );
+        generationInterval = getLong( configuration,
+                "service.property.cache.generation.interval",
+                DEFAULT_GENERATION_CHECK_INTERVAL );
+        long refreshAhead = getLong( configuration, "service.property.cache.refresh", 0 );
+        writeBehind = getLong( configuration, "service.property.write.behind", 0 );
+
+        // zero size turns the in-process cache off, every read goes to the memcache
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize( localTtl > 0 ? localSize : 0 )
+                .expireAfterWrite( localTtl, TimeUnit.SECONDS )
+                .removalListener( this::onRemoval );
+
+        if ( refreshAhead > 0 && refreshAhead < localTtl )
+        {
+            builder.refreshAfterWrite( refreshAhead, TimeUnit.SECONDS );
+        }
+        else if ( refreshAhead > 0 )
+        {
+            logger.warn( "Property refresh-ahead " + refreshAhead + " seconds ignored,"
+                    + " must be lower than local cache TTL " + localTtl + " seconds" );
+        }
+
+        local = builder.build( new SharedTierLoader() );
+
         if ( SystemProperty.environment.value() == SystemProperty.Environment.Value.Production )
         {
             // means running on the app engine environment under an applicationId
@@ -114,6 +257,36 @@ class PropertyServiceBean
         logger.info( "Configured test environment: " + testAppId );
         logger.info( "App Engine environment: " + SystemProperty.environment.value() );
         logger.info( "App Engine application ID: " + SystemProperty.applicationId.get() );
+        logger.info( "Property local cache TTL: " + localTtl + " seconds, max size: " + localSize );
+        logger.info( "Property negative cache TTL: " + negativeTtl + " seconds" );
+        logger.info( "Property generation check interval: " + generationInterval + " seconds" );
+        logger.info( "Property refresh-ahead: " + refreshAhead + " seconds" );
+        logger.info( "Property write-behind: " + writeBehind + " seconds" );
+
+        if ( writeBehind > 0 )
+        {
+            // the pending changes must not get lost once App Engine shuts down the instance
+            LifecycleManager.getInstance().setShutdownHook( this::flush );
+        }
+    }
+
+    private static long getLong( Map<String, String> configuration, String key, long defaultValue )
+    {
+        String value = configuration.get( key );
+        if ( Strings.isNullOrEmpty( value ) )
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Math.max( 0, Long.parseLong( value.trim() ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            logger.warn( "Invalid configuration value '" + value + "' of " + key + ", using " + defaultValue );
+            return defaultValue;
+        }
     }
 
     @Override
@@ -126,16 +299,17 @@ class PropertyServiceBean
         catch ( CacheException e )
         {
             logger.error( "Error occurred during creating cache instance, providing "
-                    + NonFunctionalCache.class.getSimpleName() + " instance instead.", e );
+                    + LocalCache.class.getSimpleName() + " instance instead.", e );
         }
 
-        return new NonFunctionalCache();
+        // degraded mode, short time to live as changes made by other instances are not visible
+        return new LocalCache( FALLBACK_CACHE_SIZE, TimeUnit.SECONDS.toMillis( FALLBACK_CACHE_TTL ) );
     }
 
     @Override
     public String getString( String key )
     {
-        return getProperty( key, StringConverter.instance() );
+        return getProperty( key, String.class );
     }
 
     @Override
@@ -147,7 +321,7 @@ class PropertyServiceBean
     @Override
     public Double getDouble( String key )
     {
-        return getProperty( key, DoubleConverter.instance() );
+        return getProperty( key, Double.class );
     }
 
     @Override
@@ -159,7 +333,7 @@ class PropertyServiceBean
     @Override
     public Integer getInteger( String key )
     {
-        return getProperty( key, IntegerConverter.instance() );
+        return getProperty( key, Integer.class );
     }
 
     @Override
@@ -168,6 +342,150 @@ class PropertyServiceBean
         put( key, value );
     }
 
+    @Override
+    public Long getLong( String key )
+    {
+        return getProperty( key, Long.class );
+    }
+
+    @Override
+    public void setLong( String key, Long value )
+    {
+        put( key, value );
+    }
+
+    @Override
+    public Boolean getBoolean( String key )
+    {
+        return getProperty( key, Boolean.class );
+    }
+
+    @Override
+    public void setBoolean( String key, Boolean value )
+    {
+        put( key, value );
+    }
+
+    @Override
+    public Duration getDuration( String key )
+    {
+        return getProperty( key, Duration.class );
+    }
+
+    @Override
+    public void setDuration( String key, Duration value )
+    {
+        // datastore has no native duration type
+        put( key, value == null ? null : value.toString() );
+    }
+
+    @Override
+    public int getInt( String key, int defaultValue )
+    {
+        CachedProperty property = lookup( key );
+        return property == null ? defaultValue : property.asInt( defaultValue );
+    }
+
+    @Override
+    public long getLong( String key, long defaultValue )
+    {
+        CachedProperty property = lookup( key );
+        return property == null ? defaultValue : property.asLong( defaultValue );
+    }
+
+    @Override
+    public double getDouble( String key, double defaultValue )
+    {
+        CachedProperty property = lookup( key );
+        return property == null ? defaultValue : property.asDouble( defaultValue );
+    }
+
+    @Override
+    public boolean getBoolean( String key, boolean defaultValue )
+    {
+        CachedProperty property = lookup( key );
+        return property == null ? defaultValue : property.asBoolean( defaultValue );
+    }
+
+    @Override
+    public <T> Map<String, T> getAll( @Nonnull Collection<String> keys, @Nonnull Class<T> type )
+    {
+        checkNotNull( keys );
+        Converter<T> converter = converter( checkNotNull( type ) );
+        flushIfDue();
+        checkGeneration();
+
+        Map<String, Object> cached = new HashMap<>();
+        List<String> notCached = new ArrayList<>();
+
+        for ( String key : keys )
+        {
+            Object object = valid( local.getIfPresent( key ) );
+            if ( object == null )
+            {
+                metrics.onMiss( Tier.LOCAL, key );
+                notCached.add( key );
+            }
+            else
+            {
+                metrics.onHit( Tier.LOCAL, key );
+                cached.put( key, object );
+            }
+        }
+
+        if ( !notCached.isEmpty() )
+        {
+            Map<Object, Object> fromMemcache = cache.getAll( notCached );
+            List<String> toLoad = new ArrayList<>();
+
+            for ( String key : notCached )
+            {
+                Object object = fromMemcache == null ? null : valid( fromMemcache.get( key ) );
+                if ( object == null )
+                {
+                    metrics.onMiss( Tier.MEMCACHE, key );
+                    toLoad.add( key );
+                }
+                else
+                {
+                    metrics.onHit( Tier.MEMCACHE, key );
+                    Object entry = toLocal( object );
+                    local.put( key, entry );
+                    cached.put( key, entry );
+                }
+            }
+
+            if ( !toLoad.isEmpty() )
+            {
+                cached.putAll( loadAll( toLoad ) );
+            }
+        }
+
+        Map<String, T> properties = new LinkedHashMap<>();
+        for ( String key : keys )
+        {
+            Object object = cached.get( key );
+            if ( object == null || object instanceof MissingProperty )
+            {
+                if ( object != null )
+                {
+                    metrics.onNegativeHit( key );
+                }
+                continue;
+            }
+
+            properties.put( key, ( ( CachedProperty ) object ).as( type, converter ) );
+        }
+
+        return properties;
+    }
+
+    @Override
+    public PropertyCacheStatistics getCacheStatistics()
+    {
+        return metrics.snapshot();
+    }
+
     @Override
     public boolean isProductionEnvironment()
     {
@@ -216,40 +534,461 @@ class PropertyServiceBean
     }
 
     /**
-     * Return typed property value from cache. If property is not cached, method will load value from data-store
-     * and than puts it in to cache.
+     * Return typed property value from cache, see {@link #lookup(String)}.
+     * The value converted to the requested type is kept along with the cached entry, thus converted only once.
      *
-     * @param key       property key
-     * @param converter property type converter
-     * @param <T>       property value type
+     * @param key  property key
+     * @param type property value type
+     * @param <T>  property value type
      * @return typed property value
      */
-    @SuppressWarnings( value = "unchecked" )
-    private <T> T getProperty( String key, Converter<T> converter )
+    private <T> T getProperty( String key, Class<T> type )
+    {
+        CachedProperty property = lookup( key );
+        return property == null ? null : property.as( type, converter( type ) );
+    }
+
+    /**
+     * Return property entry from cache. The in-process cache is asked first, then the memcache.
+     * If property is not cached, method will load value from data-store and than puts it in to both caches.
+     * An absent property is cached as {@link MissingProperty} and served as <code>null</code> until expired.
+     *
+     * @param key property key
+     * @return the cached property entry or <code>null</code> if property does not exist
+     */
+    private CachedProperty lookup( String key )
+    {
+        flushIfDue();
+        checkGeneration();
+        Object object = local.getIfPresent( key );
+
+        if ( object != null && valid( object ) == null )
+        {
+            // expired missing property marker, must be loaded again
+            local.invalidate( key );
+            object = null;
+        }
+
+        if ( object == null )
+        {
+            metrics.onMiss( Tier.LOCAL, key );
+            object = fetch( key );
+        }
+        else
+        {
+            metrics.onHit( Tier.LOCAL, key );
+            if ( object instanceof MissingProperty )
+            {
+                metrics.onNegativeHit( key );
+            }
+        }
+
+        if ( object instanceof MissingProperty )
+        {
+            return null;
+        }
+
+        return ( CachedProperty ) object;
+    }
+
+    /**
+     * Loads the property through the in-process cache. Concurrent calls for the same key
+     * share single load, only the first caller hits the memcache and the data-store.
+     *
+     * @param key property key
+     * @return the {@link CachedProperty} or {@link MissingProperty}
+     */
+    private Object fetch( String key )
+    {
+        try
+        {
+            return local.get( key, () -> toLocal( loadShared( key, true ) ) );
+        }
+        catch ( ExecutionException | UncheckedExecutionException e )
+        {
+            Throwables.throwIfUnchecked( e.getCause() );
+            throw new RuntimeException( e.getCause() );
+        }
+    }
+
+    /**
+     * Loads the property value from memcache or from data-store (and than puts it in to memcache) if not cached.
+     * If property does not exist or has no value, the {@link MissingProperty} will be returned instead.
+     * The value taken from data-store is not converted, it is converted to the requested type while read.
+     *
+     * @param key        property key
+     * @param foreground true if loaded on behalf of the reader, false if refreshed ahead in background
+     * @return the property value or {@link MissingProperty}, never <code>null</code>
+     */
+    private Object loadShared( String key, boolean foreground )
     {
-        Object object = cache.get( key );
-        T property = null;
+        Object object = valid( cache.get( key ) );
 
-        // if property is cached return it
+        // if property is cached in memcache, it will be promoted to the in-process cache
         if ( object != null )
         {
-            property = ( T ) object;
+            if ( foreground )
+            {
+                metrics.onHit( Tier.MEMCACHE, key );
+                if ( object instanceof MissingProperty )
+                {
+                    metrics.onNegativeHit( key );
+                }
+            }
+            return object;
         }
+
+        if ( foreground )
+        {
+            metrics.onMiss( Tier.MEMCACHE, key );
+        }
+
+        // not written yet change is the most recent one
+        Object value = pending.get( key );
+
         // else try to get it from data-store and cache it
-        else
+        if ( value == null )
         {
             Entity entity = get( key );
-            if ( entity != null )
+            value = entity == null ? null : entity.getProperty( ENTITY_PROPERTY_VALUE );
+        }
+        else if ( value == NULL_VALUE )
+        {
+            value = null;
+        }
+
+        Object shared = toShared( value );
+        if ( isCacheable( shared ) )
+        {
+            cache.put( key, shared );
+        }
+        return shared;
+    }
+
+    /**
+     * Converts the stored property value to the memcache entry. The App Engine native text is unwrapped,
+     * the absent value is replaced by the {@link MissingProperty}.
+     *
+     * @param value the stored property value
+     * @return the property value or {@link MissingProperty}, never <code>null</code>
+     */
+    private Object toShared( Object value )
+    {
+        if ( value instanceof Text )
+        {
+            value = ( ( Text ) value ).getValue();
+        }
+
+        // with negative caching turned off the marker expires immediately
+        return value == null ? new MissingProperty( negativeTtl ) : value;
+    }
+
+    /**
+     * Returns true if the given memcache entry is worth to be cached,
+     * the {@link MissingProperty} only if negative caching is turned on.
+     *
+     * @param object the property value or {@link MissingProperty}
+     * @return true if to be cached
+     */
+    private boolean isCacheable( Object object )
+    {
+        return !( object instanceof MissingProperty ) || negativeTtl > 0;
+    }
+
+    /**
+     * Loads the property values by a single data-store batch get and puts them in to both caches at once,
+     * the same way as {@link #loadShared(String, boolean)} does for the single property. Not written yet change
+     * is taken in place of the stored value. The raw values are cached, they are converted to the requested type
+     * while read. Properties that do not exist or have no value will be cached as {@link MissingProperty}.
+     *
+     * @param keys the keys of the properties to be loaded
+     * @return the map of loaded in-process cache entries, including missing property markers if turned on
+     */
+    private Map<String, Object> loadAll( List<String> keys )
+    {
+        Map<String, Object> values = new HashMap<>();
+        List<Key> toGet = new ArrayList<>();
+
+        for ( String key : keys )
+        {
+            Object value = pending.get( key );
+            if ( value == null )
+            {
+                toGet.add( KeyFactory.createKey( ENTITY_PROPERTY, key ) );
+            }
+            else
+            {
+                values.put( key, value == NULL_VALUE ? null : value );
+            }
+        }
+
+        if ( !toGet.isEmpty() )
+        {
+            long start = System.nanoTime();
+            Map<Key, Entity> entities = datastoreService.get( toGet );
+            metrics.onDatastoreLoad( toGet.size(), System.nanoTime() - start );
+
+            for ( Key key : toGet )
             {
-                property = converter.convert( entity.getProperty( ENTITY_PROPERTY_VALUE ) );
-                if ( property != null )
+                Entity entity = entities.get( key );
+                values.put( key.getName(), entity == null ? null : entity.getProperty( ENTITY_PROPERTY_VALUE ) );
+            }
+        }
+
+        Map<String, Object> shared = new HashMap<>();
+        Map<String, Object> entries = new HashMap<>();
+
+        for ( String key : keys )
+        {
+            Object object = toShared( values.get( key ) );
+            if ( isCacheable( object ) )
+            {
+                shared.put( key, object );
+                entries.put( key, toLocal( object ) );
+            }
+        }
+
+        if ( !shared.isEmpty() )
+        {
+            cache.putAll( shared );
+            local.putAll( entries );
+        }
+
+        return entries;
+    }
+
+    /**
+     * Returns the property type converter for the given type.
+     *
+     * @param type the property value type
+     * @param <T>  property value type
+     * @return the property type converter
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    @SuppressWarnings( value = "unchecked" )
+    private static <T> Converter<T> converter( Class<T> type )
+    {
+        if ( String.class == type )
+        {
+            return ( Converter<T> ) StringConverter.instance();
+        }
+        if ( Integer.class == type )
+        {
+            return ( Converter<T> ) IntegerConverter.instance();
+        }
+        if ( Double.class == type )
+        {
+            return ( Converter<T> ) DoubleConverter.instance();
+        }
+        if ( Long.class == type )
+        {
+            return ( Converter<T> ) LongConverter.instance();
+        }
+        if ( Boolean.class == type )
+        {
+            return ( Converter<T> ) BooleanConverter.instance();
+        }
+        if ( Duration.class == type )
+        {
+            return ( Converter<T> ) DurationConverter.instance();
+        }
+
+        throw new IllegalArgumentException( "Unsupported property type: " + type.getName() );
+    }
+
+    /**
+     * Caches the {@link MissingProperty} marker in both caches, if negative caching is turned on.
+     * Otherwise the property is just removed from the in-process cache.
+     *
+     * @param key property key
+     */
+    private void cacheMissing( String key )
+    {
+        if ( negativeTtl > 0 )
+        {
+            MissingProperty missing = new MissingProperty( negativeTtl );
+            cache.put( key, missing );
+            local.put( key, missing );
+        }
+        else
+        {
+            local.invalidate( key );
+        }
+    }
+
+    /**
+     * Checks the global property generation counter at most once per configured interval.
+     * If the counter has moved since the last check, the in-process cache will be invalidated
+     * as some of the properties have been changed meanwhile (by any instance).
+     */
+    private void checkGeneration()
+    {
+        if ( generationInterval <= 0 )
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long next = nextGenerationCheck.get();
+
+        // only single thread checks the counter per interval
+        if ( now < next || !nextGenerationCheck.compareAndSet( next, now + generationInterval * 1000 ) )
+        {
+            return;
+        }
+
+        long current = getGeneration();
+        if ( current != lastGeneration )
+        {
+            if ( lastGeneration >= 0 )
+            {
+                logger.info( "Property generation has moved from " + lastGeneration + " to " + current
+                        + ", invalidating in-process cache." );
+            }
+            local.invalidateAll();
+            lastGeneration = current;
+        }
+    }
+
+    /**
+     * Returns the current global property generation taken from the memcache counter.
+     * A missing (evicted) counter is seeded by the current time, thus it moves for all instances
+     * as a bump might have been lost. The datastore counter is taken only if the memcache is not available.
+     *
+     * @return the current property generation
+     */
+    private long getGeneration()
+    {
+        Object cached = memcache.get( GENERATION_CACHE_KEY );
+        if ( cached == null )
+        {
+            long seed = System.currentTimeMillis();
+            memcache.put( GENERATION_CACHE_KEY, seed, null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT );
+            cached = memcache.get( GENERATION_CACHE_KEY );
+        }
+
+        if ( cached instanceof Long )
+        {
+            return ( Long ) cached;
+        }
+
+        try
+        {
+            Entity entity = datastoreService.get( KeyFactory.createKey( ENTITY_GENERATION, ENTITY_GENERATION_NAME ) );
+            Object value = entity.getProperty( ENTITY_PROPERTY_VALUE );
+            return value == null ? 0 : ( Long ) value;
+        }
+        catch ( EntityNotFoundException e )
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Increments the global property generation counter. The memcache counter is incremented atomically,
+     * thus concurrent property changes do not contend on a single entity group. The datastore counter
+     * is incremented only as a fallback if the memcache is not available.
+     */
+    private void bumpGeneration()
+    {
+        // seeded by the current time if missing, thus not likely to return to an already seen generation
+        Long current = memcache.increment( GENERATION_CACHE_KEY, 1, System.currentTimeMillis() );
+        if ( current == null )
+        {
+            logger.warn( "Property generation memcache increment failed, incrementing datastore counter." );
+            current = bumpStoredGeneration();
+        }
+
+        if ( current == null )
+        {
+            return;
+        }
+
+        // someone else has changed properties meanwhile, this instance is stale too
+        if ( current - 1 != lastGeneration )
+        {
+            local.invalidateAll();
+        }
+        lastGeneration = current;
+    }
+
+    /**
+     * Increments the datastore generation counter in a transaction. Retried on concurrent modification,
+     * once all attempts failed, the error is logged and other instances will see the property change
+     * at the latest once their in-process cache entry expires.
+     *
+     * @return the incremented generation or <code>null</code> if failed
+     */
+    private Long bumpStoredGeneration()
+    {
+        Key key = KeyFactory.createKey( ENTITY_GENERATION, ENTITY_GENERATION_NAME );
+
+        for ( int attempt = 1; attempt <= GENERATION_BUMP_RETRIES; attempt++ )
+        {
+            Transaction txn = datastoreService.beginTransaction();
+            try
+            {
+                Entity entity;
+                try
+                {
+                    entity = datastoreService.get( txn, key );
+                }
+                catch ( EntityNotFoundException e )
+                {
+                    entity = new Entity( key );
+                }
+
+                Object value = entity.getProperty( ENTITY_PROPERTY_VALUE );
+                long current = value == null ? 0 : ( Long ) value;
+
+                entity.setProperty( ENTITY_PROPERTY_VALUE, current + 1 );
+                datastoreService.put( txn, entity );
+                txn.commit();
+
+                return current + 1;
+            }
+            catch ( ConcurrentModificationException e )
+            {
+                logger.warn( "Property generation bump attempt " + attempt + " failed: " + e.getMessage() );
+            }
+            finally
+            {
+                if ( txn.isActive() )
                 {
-                    cache.put( key, property );
+                    txn.rollback();
                 }
             }
         }
 
-        return property;
+        logger.error( "Property generation bump failed after " + GENERATION_BUMP_RETRIES + " attempts,"
+                + " other instances see the property change once their in-process cache entry expires." );
+        return null;
+    }
+
+    /**
+     * Returns the cached object or <code>null</code> if not cached or cached {@link MissingProperty} has expired.
+     *
+     * @param object the cached object
+     * @return the valid cached object or <code>null</code>
+     */
+    private Object valid( Object object )
+    {
+        if ( object instanceof MissingProperty && ( ( MissingProperty ) object ).isExpired() )
+        {
+            return null;
+        }
+        return object;
+    }
+
+    /**
+     * Wraps the value taken from the shared tier to the in-process cache entry.
+     *
+     * @param object the property value or {@link MissingProperty}
+     * @return the {@link CachedProperty} or {@link MissingProperty}
+     */
+    private Object toLocal( Object object )
+    {
+        return object instanceof MissingProperty ? object : new CachedProperty( object );
     }
 
     /**
@@ -260,6 +999,7 @@ class PropertyServiceBean
      */
     private Entity get( String key )
     {
+        long start = System.nanoTime();
         try
         {
             return datastoreService.get( KeyFactory.createKey( ENTITY_PROPERTY, key ) );
@@ -269,21 +1009,181 @@ class PropertyServiceBean
             logger.warn( "Property entity not found for key: " + key );
             return null;
         }
+        finally
+        {
+            metrics.onDatastoreLoad( 1, System.nanoTime() - start );
+        }
     }
 
     /**
-     * Put key-value pair to data-store, and cache it.
+     * Notifies the metrics about the property removed from the in-process cache by the cache itself.
+     *
+     * @param notification the in-process cache removal notification
+     */
+    private void onRemoval( RemovalNotification<Object, Object> notification )
+    {
+        if ( notification.wasEvicted() && notification.getKey() != null )
+        {
+            metrics.onEviction( notification.getKey().toString(),
+                    notification.getCause() == RemovalCause.EXPIRED );
+        }
+    }
+
+    /**
+     * Put key-value pair to data-store, and cache it. In write-behind mode the value is cached immediately,
+     * but the write to data-store is deferred and coalesced with other changes, see {@link #flush()}.
      *
      * @param key   property key
      * @param value property value
      */
     private void put( String key, Object value )
     {
-        Entity property = get( key );
-        if ( property == null )
+        if ( writeBehind > 0 )
+        {
+            if ( isCurrent( key, value ) )
+            {
+                // value has not changed, nothing to write
+                return;
+            }
+
+            cacheValue( key, value );
+            pending.put( key, value == null ? NULL_VALUE : value );
+            flushDeadline.compareAndSet( 0, System.currentTimeMillis() + writeBehind * 1000 );
+            flushIfDue();
+            return;
+        }
+
+        // put property entity to data-store
+        datastoreService.put( newEntity( key, value ) );
+
+        // memcache must be up to date before other instances are told to reload from it
+        cacheValue( key, value );
+
+        if ( generationInterval > 0 )
+        {
+            // let other instances know the property has changed
+            bumpGeneration();
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        flushDeadline.set( 0 );
+        if ( pending.isEmpty() )
+        {
+            return;
+        }
+
+        Map<String, Object> flushed = new HashMap<>();
+        List<Entity> entities = new ArrayList<>();
+
+        for ( String key : pending.keySet() )
+        {
+            Object value = pending.get( key );
+
+            // changed concurrently will be taken by the next flush
+            if ( value != null && pending.remove( key, value ) )
+            {
+                flushed.put( key, value );
+                entities.add( newEntity( key, value == NULL_VALUE ? null : value ) );
+            }
+        }
+
+        if ( entities.isEmpty() )
+        {
+            return;
+        }
+
+        try
+        {
+            datastoreService.put( entities );
+        }
+        catch ( RuntimeException e )
+        {
+            // keep them to be written next time, unless changed meanwhile
+            for ( Map.Entry<String, Object> entry : flushed.entrySet() )
+            {
+                pending.putIfAbsent( entry.getKey(), entry.getValue() );
+            }
+            flushDeadline.compareAndSet( 0, System.currentTimeMillis() + writeBehind * 1000 );
+            throw e;
+        }
+
+        if ( generationInterval > 0 )
+        {
+            // single bump for all of the changes
+            bumpGeneration();
+        }
+
+        logger.info( "Property changes flushed: " + entities.size() );
+    }
+
+    /**
+     * Flushes the pending property changes if the write-behind window has elapsed.
+     * Called while accessing properties, thus a failed write is just logged, the changes are kept pending
+     * to be retried once the next window has elapsed.
+     */
+    private void flushIfDue()
+    {
+        long deadline = flushDeadline.get();
+        if ( deadline > 0 && System.currentTimeMillis() >= deadline && flushDeadline.compareAndSet( deadline, 0 ) )
         {
-            property = new Entity( ENTITY_PROPERTY, key );
+            try
+            {
+                flush();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "Property changes flush failed, kept pending to be retried: " + pending.size(), e );
+            }
         }
+    }
+
+    /**
+     * Returns true if the given value is equal to the pending or cached one.
+     * If property is not known to this instance, it's considered as changed.
+     *
+     * @param key   property key
+     * @param value property value to be compared
+     * @return true if value has not changed
+     */
+    private boolean isCurrent( String key, Object value )
+    {
+        Object current = pending.get( key );
+        if ( current == null )
+        {
+            current = valid( local.getIfPresent( key ) );
+            if ( current == null )
+            {
+                return false;
+            }
+        }
+
+        if ( current == NULL_VALUE || current instanceof MissingProperty )
+        {
+            return value == null;
+        }
+
+        if ( current instanceof CachedProperty )
+        {
+            current = ( ( CachedProperty ) current ).value();
+        }
+
+        return current.equals( value );
+    }
+
+    /**
+     * Creates the property entity for the given key-value pair.
+     * The entity holds just the value, thus no need to read the persisted one before put.
+     *
+     * @param key   property key
+     * @param value property value
+     * @return the property entity
+     */
+    private Entity newEntity( String key, Object value )
+    {
+        Entity property = new Entity( ENTITY_PROPERTY, key );
 
         Object valueToStore;
         if ( value instanceof String && ( ( String ) value ).getBytes().length > 1500 )
@@ -297,11 +1197,41 @@ class PropertyServiceBean
         }
 
         property.setProperty( ENTITY_PROPERTY_VALUE, valueToStore );
+        return property;
+    }
 
-        // put property entity to data-store
-        datastoreService.put( property );
+    /**
+     * Puts the value to both caches, overrides cached missing property marker if any.
+     *
+     * @param key   property key
+     * @param value property value
+     */
+    private void cacheValue( String key, Object value )
+    {
+        if ( value == null )
+        {
+            cache.put( key, null );
+            cacheMissing( key );
+        }
+        else
+        {
+            cache.put( key, value );
+            local.put( key, new CachedProperty( value ) );
+        }
+    }
 
-        // cache property
-        cache.put( key, value );
+    /**
+     * The in-process cache loader, loads property from the shared tier (memcache, then data-store).
+     * The refresh-ahead reload is executed synchronously by the reader that has found the entry old enough,
+     * as the memcache and the data-store calls require the App Engine API environment of a live request.
+     */
+    private class SharedTierLoader
+            extends CacheLoader<String, Object>
+    {
+        @Override
+        public Object load( @Nonnull String key )
+        {
+            return toLocal( loadShared( key, false ) );
+        }
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import com.google.common.net.MediaType;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * The admin servlet rendering the current {@link PropertyCacheStatistics} as JSON.
+ * Registered by {@link CtoolkitCommonServicesAdminModule}. The statistics reveal property keys,
+ * thus make sure the URL is accessible only by the application administrators (security constraint).
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+@Singleton
+class PropertyStatisticsServlet
+        extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    private final PropertyService service;
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    @Inject
+    PropertyStatisticsServlet( PropertyService service )
+    {
+        this.service = service;
+    }
+
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        MediaType jsonUtf8 = MediaType.JSON_UTF_8;
+
+        response.setStatus( HttpServletResponse.SC_OK );
+        response.setCharacterEncoding( jsonUtf8.charset().get().name() );
+        response.setContentType( jsonUtf8.toString() );
+        response.setHeader( "Cache-Control", "no-store" );
+
+        gson.toJson( service.getCacheStatistics(), response.getWriter() );
+    }
+}
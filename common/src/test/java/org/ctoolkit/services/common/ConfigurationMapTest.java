@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+import org.ctoolkit.services.guice.CtoolkitServicesAppEngineModule;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * The {@link Configuration} map provided by {@link CtoolkitCommonServicesModule} unit testing.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class ConfigurationMapTest
+{
+    @Test
+    public void namedBindingsResolved()
+    {
+        AtomicInteger calls = new AtomicInteger();
+
+        Injector injector = Guice.createInjector( new CtoolkitServicesAppEngineModule(),
+                new CtoolkitCommonServicesModule(),
+                new AbstractModule()
+                {
+                    @Override
+                    protected void configure()
+                    {
+                        PropertyConfig config = new PropertyConfig();
+                        config.setTestAppI( "localhost" );
+                        Names.bindProperties( binder(), config );
+
+                        bind( String.class ).annotatedWith( Names.named( "dynamic" ) )
+                                .toProvider( () -> "dynamic-" + calls.incrementAndGet() );
+                    }
+                } );
+
+        Map<String, String> configuration = injector.getInstance(
+                Key.get( new TypeLiteral<Map<String, String>>()
+                {
+                }, Configuration.class ) );
+
+        assertThat( configuration.get( "service.property.appId.test" ) ).isEqualTo( "localhost" );
+        assertThat( configuration.containsKey( "service.property.appId.test" ) ).isTrue();
+        assertThat( configuration.get( "unknown" ) ).isNull();
+        assertThat( configuration.containsKey( "unknown" ) ).isFalse();
+
+        // provider backed binding is being resolved on each access
+        assertThat( configuration.get( "dynamic" ) ).isEqualTo( "dynamic-1" );
+        assertThat( configuration.get( "dynamic" ) ).isEqualTo( "dynamic-2" );
+
+        assertThat( configuration.size() ).isEqualTo( 2 );
+        assertThat( configuration.keySet() ).containsExactly( "service.property.appId.test", "dynamic" );
+        assertThat( configuration ).containsEntry( "service.property.appId.test", "localhost" );
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * {@link HotKeySketch} unit testing.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class HotKeySketchTest
+{
+    @Test
+    public void hottestKeysSurviveReplacement()
+    {
+        HotKeySketch sketch = new HotKeySketch( 5 );
+
+        for ( int round = 0; round < 100; round++ )
+        {
+            sketch.add( "hot-1", 1 );
+            sketch.add( "hot-2", 1 );
+            sketch.add( "hot-1", 1 );
+            // long tail, each key just once
+            sketch.add( "cold-" + round, 1 );
+        }
+
+        List<PropertyCacheStatistics.HotKey> top = sketch.top( 2 );
+
+        assertThat( top ).hasSize( 2 );
+        assertThat( top.get( 0 ).getKey() ).isEqualTo( "hot-1" );
+        assertThat( top.get( 0 ).getCount() ).isAtLeast( 200L );
+        assertThat( top.get( 1 ).getKey() ).isEqualTo( "hot-2" );
+        assertThat( top.get( 1 ).getCount() ).isAtLeast( 100L );
+    }
+}
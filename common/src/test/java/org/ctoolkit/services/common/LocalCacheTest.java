@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.common;
+
+import com.google.appengine.api.memcache.stdimpl.GCacheFactory;
+import org.testng.annotations.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheListener;
+import javax.cache.CacheStatistics;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * {@link LocalCache} unit testing.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class LocalCacheTest
+{
+    @Test
+    @SuppressWarnings( value = "unchecked" )
+    public void putAndGet()
+    {
+        Cache cache = new LocalCacheFactory().createCache( Collections.emptyMap() );
+
+        assertThat( cache.put( "a", 1 ) ).isNull();
+        assertThat( cache.put( "a", 2 ) ).isEqualTo( 1 );
+        cache.put( "b", null );
+
+        assertThat( cache.get( "a" ) ).isEqualTo( 2 );
+        assertThat( cache.containsKey( "b" ) ).isTrue();
+        assertThat( cache.get( "b" ) ).isNull();
+        assertThat( cache.get( "c" ) ).isNull();
+        assertThat( cache.getAll( Arrays.asList( "a", "c" ) ) ).containsExactly( "a", 2 );
+        assertThat( cache.keySet() ).containsExactly( "a", "b" );
+        assertThat( cache.getCacheEntry( "a" ).getHits() ).isEqualTo( 2 );
+
+        CacheStatistics statistics = cache.getCacheStatistics();
+        assertThat( statistics.getCacheHits() ).isEqualTo( 3 );
+        assertThat( statistics.getCacheMisses() ).isEqualTo( 2 );
+        assertThat( statistics.getObjectCount() ).isEqualTo( 2 );
+
+        statistics.clearStatistics();
+        assertThat( statistics.getCacheHits() ).isEqualTo( 0 );
+
+        assertThat( cache.remove( "a" ) ).isEqualTo( 2 );
+        cache.clear();
+        assertThat( cache.isEmpty() ).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings( value = "unchecked" )
+    public void evictedOnceFull()
+    {
+        Map<Object, Object> properties = new HashMap<>();
+        properties.put( LocalCacheFactory.MAXIMUM_SIZE, 10 );
+        Cache cache = new LocalCacheFactory().createCache( properties );
+
+        AtomicInteger evicted = new AtomicInteger();
+        cache.addListener( new EvictionCounter( evicted ) );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.put( i, i );
+        }
+
+        assertThat( cache.size() ).isAtMost( 10 );
+        assertThat( evicted.get() ).isAtLeast( 90 );
+        // the most recent one is kept
+        assertThat( cache.get( 99 ) ).isEqualTo( 99 );
+    }
+
+    @Test
+    @SuppressWarnings( value = "unchecked" )
+    public void expiredOnceTtlElapsed() throws InterruptedException
+    {
+        Map<Object, Object> properties = new HashMap<>();
+        properties.put( GCacheFactory.EXPIRATION_DELTA_MILLIS, 50 );
+        Cache cache = new LocalCacheFactory().createCache( properties );
+
+        cache.put( "a", 1 );
+        assertThat( cache.get( "a" ) ).isEqualTo( 1 );
+
+        Thread.sleep( 100 );
+
+        assertThat( cache.get( "a" ) ).isNull();
+        assertThat( cache.size() ).isEqualTo( 0 );
+    }
+
+    private static class EvictionCounter
+            implements CacheListener
+    {
+        private final AtomicInteger evicted;
+
+        EvictionCounter( AtomicInteger evicted )
+        {
+            this.evicted = evicted;
+        }
+
+        @Override
+        public void onClear()
+        {
+        }
+
+        @Override
+        public void onEvict( Object key )
+        {
+            evicted.incrementAndGet();
+        }
+
+        @Override
+        public void onLoad( Object key )
+        {
+        }
+
+        @Override
+        public void onPut( Object value )
+        {
+        }
+
+        @Override
+        public void onRmove( Object key )
+        {
+        }
+    }
+}
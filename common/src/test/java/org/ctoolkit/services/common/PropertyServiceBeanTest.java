@@ -18,19 +18,31 @@
 
 package org.ctoolkit.services.common;
 
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
 import org.testng.annotations.Test;
 
+import javax.annotation.Nonnull;
 import javax.cache.Cache;
 import javax.cache.CacheFactory;
 import javax.inject.Inject;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.testng.Assert.fail;
 
 /**
  * The fully functional backend property service test.
@@ -146,6 +158,317 @@ public class PropertyServiceBeanTest
         assertThat( propertyService.getInteger( key ) ).isNull();
     }
 
+    @Test
+    public void setLongBooleanDurationProperties()
+    {
+        propertyService.setLong( "long-property", 3000000000L );
+        propertyService.setBoolean( "boolean-property", true );
+        propertyService.setDuration( "duration-property", Duration.ofMinutes( 15 ) );
+
+        assertThat( propertyService.getLong( "long-property" ) ).isEqualTo( 3000000000L );
+        assertThat( propertyService.getBoolean( "boolean-property" ) ).isTrue();
+        assertThat( propertyService.getDuration( "duration-property" ) ).isEqualTo( Duration.ofMinutes( 15 ) );
+
+        propertyService.setDuration( "duration-property", null );
+        assertThat( propertyService.getDuration( "duration-property" ) ).isNull();
+    }
+
+    @Test
+    public void primitivePropertiesWithDefaults()
+    {
+        propertyService.setString( "primitive-int", "42" );
+        propertyService.setString( "primitive-double", "1.5" );
+        propertyService.setString( "primitive-boolean", "TRUE" );
+        propertyService.setLong( "primitive-long", 3000000000L );
+        propertyService.setString( "primitive-invalid", "abc" );
+
+        assertThat( propertyService.getInt( "primitive-int", -1 ) ).isEqualTo( 42 );
+        // served from the already parsed value
+        assertThat( propertyService.getInt( "primitive-int", -1 ) ).isEqualTo( 42 );
+        assertThat( propertyService.getLong( "primitive-int", -1L ) ).isEqualTo( 42L );
+        assertThat( propertyService.getDouble( "primitive-double", -1D ) ).isEqualTo( 1.5D );
+        assertThat( propertyService.getBoolean( "primitive-boolean", false ) ).isTrue();
+        assertThat( propertyService.getLong( "primitive-long", -1L ) ).isEqualTo( 3000000000L );
+
+        // out of int range
+        assertThat( propertyService.getInt( "primitive-long", -1 ) ).isEqualTo( -1 );
+        // not parsable
+        assertThat( propertyService.getInt( "primitive-invalid", -1 ) ).isEqualTo( -1 );
+        assertThat( propertyService.getBoolean( "primitive-invalid", true ) ).isTrue();
+        // missing
+        assertThat( propertyService.getDouble( "primitive-missing", 2.5D ) ).isEqualTo( 2.5D );
+    }
+
+    @Test
+    public void localCacheServesRepeatedReads()
+    {
+        String key = "local-cached-property";
+        String value = "local-cached-value";
+
+        propertyService.setString( key, value );
+
+        PropertyCacheStatistics before = propertyService.getCacheStatistics();
+
+        assertThat( propertyService.getString( key ) ).isEqualTo( value );
+        assertThat( propertyService.getString( key ) ).isEqualTo( value );
+
+        PropertyCacheStatistics after = propertyService.getCacheStatistics();
+
+        // both reads served by the in-process cache, no memcache round trip
+        assertThat( after.getLocalHitCount() - before.getLocalHitCount() ).isEqualTo( 2 );
+        assertThat( after.getMemcacheHitCount() ).isEqualTo( before.getMemcacheHitCount() );
+        assertThat( after.getMemcacheMissCount() ).isEqualTo( before.getMemcacheMissCount() );
+    }
+
+    @Test
+    public void localCacheTurnedOff()
+    {
+        String key = "memcache-only-property";
+        String value = "memcache-only-value";
+
+        Map<String, String> config = new HashMap<>();
+        config.put( PRODUCTION_PROPERTY, "localhostAsProd" );
+        config.put( TEST_PROPERTY, "localhost" );
+        config.put( "service.property.cache.local.ttl", "0" );
+
+        PropertyServiceBean psb = new PropertyServiceBean( factory, config );
+        psb.setString( key, value );
+
+        assertThat( psb.getString( key ) ).isEqualTo( value );
+        assertThat( psb.getString( key ) ).isEqualTo( value );
+
+        PropertyCacheStatistics stats = psb.getCacheStatistics();
+        assertThat( stats.getLocalHitCount() ).isEqualTo( 0 );
+        assertThat( stats.getMemcacheHitCount() ).isEqualTo( 2 );
+    }
+
+    @Test
+    public void cacheAccessInstrumented()
+    {
+        String key = "instrumented-property";
+
+        Map<String, String> config = new HashMap<>();
+        config.put( PRODUCTION_PROPERTY, "localhostAsProd" );
+        config.put( TEST_PROPERTY, "localhost" );
+
+        List<String> events = new ArrayList<>();
+        PropertyMetrics metrics = new PropertyMetrics()
+        {
+            @Override
+            public void onHit( @Nonnull Tier tier, @Nonnull String key )
+            {
+                events.add( "hit:" + tier );
+            }
+
+            @Override
+            public void onMiss( @Nonnull Tier tier, @Nonnull String key )
+            {
+                events.add( "miss:" + tier );
+            }
+
+            @Override
+            public void onNegativeHit( @Nonnull String key )
+            {
+                events.add( "negative" );
+            }
+
+            @Override
+            public void onDatastoreLoad( int count, long nanos )
+            {
+                events.add( "datastore" );
+            }
+
+            @Override
+            public void onEviction( @Nonnull String key, boolean expired )
+            {
+                events.add( "eviction" );
+            }
+        };
+
+        PropertyServiceBean psb = new PropertyServiceBean( factory, config, Collections.singleton( metrics ) );
+        cache.remove( key );
+
+        assertThat( psb.getString( key ) ).isNull();
+        assertThat( psb.getString( key ) ).isNull();
+
+        assertThat( events ).containsExactly( "miss:LOCAL", "miss:MEMCACHE", "datastore", "hit:LOCAL", "negative" )
+                .inOrder();
+
+        PropertyCacheStatistics stats = psb.getCacheStatistics();
+        assertThat( stats.getDatastoreLoadCount() ).isEqualTo( 1 );
+
+        long loads = 0;
+        for ( long count : stats.getDatastoreLatency().values() )
+        {
+            loads += count;
+        }
+        assertThat( loads ).isEqualTo( 1 );
+    }
+
+    @Test
+    public void missingPropertyCached()
+    {
+        String key = "missing-property";
+        String value = "no-longer-missing-value";
+
+        PropertyCacheStatistics before = propertyService.getCacheStatistics();
+
+        assertThat( propertyService.getString( key ) ).isNull();
+        assertThat( propertyService.getString( key ) ).isNull();
+        assertThat( propertyService.getInteger( key ) ).isNull();
+
+        PropertyCacheStatistics after = propertyService.getCacheStatistics();
+
+        // only the first read went to the datastore, others served by the missing property marker
+        assertThat( after.getMemcacheMissCount() - before.getMemcacheMissCount() ).isEqualTo( 1 );
+        assertThat( after.getNegativeHitCount() - before.getNegativeHitCount() ).isEqualTo( 2 );
+
+        // set property invalidates the marker
+        propertyService.setString( key, value );
+        assertThat( propertyService.getString( key ) ).isEqualTo( value );
+    }
+
+    @Test
+    public void propertyChangePropagatedToOtherInstance() throws InterruptedException
+    {
+        String key = "propagated-property";
+
+        Map<String, String> config = new HashMap<>();
+        config.put( PRODUCTION_PROPERTY, "localhostAsProd" );
+        config.put( TEST_PROPERTY, "localhost" );
+        config.put( "service.property.cache.generation.interval", "1" );
+
+        PropertyServiceBean first = new PropertyServiceBean( factory, config );
+        PropertyServiceBean second = new PropertyServiceBean( factory, config );
+
+        first.setString( key, "first-value" );
+        assertThat( second.getString( key ) ).isEqualTo( "first-value" );
+
+        first.setString( key, "second-value" );
+
+        // within the check interval the second instance still serves its in-process cached value
+        assertThat( second.getString( key ) ).isEqualTo( "first-value" );
+
+        Thread.sleep( 1100 );
+
+        // generation has moved, in-process cache invalidated, value taken from memcache
+        assertThat( second.getString( key ) ).isEqualTo( "second-value" );
+    }
+
+    @Test
+    public void refreshAheadReloadsOldEnoughValue() throws InterruptedException
+    {
+        String key = "refreshed-property";
+
+        Map<String, String> config = new HashMap<>();
+        config.put( PRODUCTION_PROPERTY, "localhostAsProd" );
+        config.put( TEST_PROPERTY, "localhost" );
+        config.put( "service.property.cache.generation.interval", "0" );
+        config.put( "service.property.cache.local.ttl", "30" );
+        config.put( "service.property.cache.refresh", "1" );
+
+        PropertyServiceBean reader = new PropertyServiceBean( factory, config );
+        PropertyServiceBean writer = new PropertyServiceBean( factory, config );
+
+        reader.setString( key, "first-value" );
+        writer.setString( key, "second-value" );
+
+        // not old enough to be refreshed
+        assertThat( reader.getString( key ) ).isEqualTo( "first-value" );
+
+        Thread.sleep( 1100 );
+
+        // old enough, reloaded by the reader with no in-process cache miss
+        assertThat( reader.getString( key ) ).isEqualTo( "second-value" );
+        assertThat( reader.getCacheStatistics().getLocalMissCount() ).isEqualTo( 0 );
+    }
+
+    @Test
+    public void writeBehindCoalescesChanges() throws Exception
+    {
+        String key = "write-behind-property";
+        Key dbKey = KeyFactory.createKey( "Property", key );
+        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+        Map<String, String> config = new HashMap<>();
+        config.put( PRODUCTION_PROPERTY, "localhostAsProd" );
+        config.put( TEST_PROPERTY, "localhost" );
+        config.put( "service.property.write.behind", "60" );
+
+        PropertyServiceBean psb = new PropertyServiceBean( factory, config );
+
+        psb.setInteger( key, 1 );
+        psb.setInteger( key, 2 );
+        psb.setInteger( key, 2 );
+
+        // change is visible immediately
+        assertThat( psb.getInteger( key ) ).isEqualTo( 2 );
+
+        // but not written yet
+        try
+        {
+            datastore.get( dbKey );
+            fail( "Property is not expected to be written before flush" );
+        }
+        catch ( EntityNotFoundException ignored )
+        {
+        }
+
+        psb.flush();
+
+        assertThat( datastore.get( dbKey ).getProperty( "value" ) ).isEqualTo( 2L );
+    }
+
+    @Test
+    public void getAllProperties()
+    {
+        propertyService.setInteger( "bulk-property-1", 1 );
+        propertyService.setInteger( "bulk-property-2", 2 );
+        propertyService.setString( "bulk-property-3", "3" );
+
+        List<String> keys = Arrays.asList( "bulk-property-1", "bulk-property-2", "bulk-property-3", "bulk-missing" );
+        Map<String, Integer> properties = propertyService.getAll( keys, Integer.class );
+
+        assertThat( properties ).containsExactly( "bulk-property-1", 1,
+                "bulk-property-2", 2,
+                "bulk-property-3", 3 );
+    }
+
+    @Test
+    public void getAllPropertiesLoadedAsSingleGet() throws Exception
+    {
+        InputStream stream = PropertyServiceBeanTest.class.getResourceAsStream( "text.properties" );
+        String text = CharStreams.toString( new InputStreamReader( stream, Charsets.UTF_8.name() ) );
+
+        Map<String, String> config = new HashMap<>();
+        config.put( PRODUCTION_PROPERTY, "localhostAsProd" );
+        config.put( TEST_PROPERTY, "localhost" );
+        config.put( "service.property.cache.generation.interval", "0" );
+        config.put( "service.property.cache.local.ttl", "0" );
+        config.put( "service.property.write.behind", "60" );
+
+        PropertyServiceBean psb = new PropertyServiceBean( factory, config );
+
+        propertyService.setString( "bulk-text", text );
+        propertyService.setString( "bulk-raw", "7" );
+        psb.setString( "bulk-pending", "pending-value" );
+        cache.clear();
+
+        Map<String, String> properties = psb.getAll( Arrays.asList( "bulk-text", "bulk-pending" ), String.class );
+        assertThat( properties ).containsExactly( "bulk-text", text, "bulk-pending", "pending-value" );
+
+        // the raw value is cached, converted while read
+        assertThat( psb.getAll( Collections.singletonList( "bulk-raw" ), Integer.class ) )
+                .containsExactly( "bulk-raw", 7 );
+        assertThat( cache.get( "bulk-raw" ) ).isEqualTo( "7" );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void getAllPropertiesUnsupportedType()
+    {
+        propertyService.getAll( Collections.singletonList( "bulk-property" ), Object.class );
+    }
+
     @Test
     public void isTestingEnvironment()
     {
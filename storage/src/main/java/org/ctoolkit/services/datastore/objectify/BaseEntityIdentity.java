@@ -22,10 +22,12 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Ref;
+import com.googlecode.objectify.annotation.IgnoreLoad;
 import com.googlecode.objectify.annotation.IgnoreSave;
 import com.googlecode.objectify.annotation.Index;
 import com.googlecode.objectify.annotation.OnLoad;
 import com.googlecode.objectify.annotation.OnSave;
+import com.googlecode.objectify.condition.IfNull;
 import org.ctoolkit.services.storage.EntityIdentity;
 
 import javax.annotation.Nonnull;
@@ -34,6 +36,7 @@ import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -87,6 +90,14 @@ public abstract class BaseEntityIdentity<ID_TYPE>
     @IgnoreSave
     private Ignored ignoredFields;
 
+    /**
+     * The derived properties of the fields annotated with {@link LikeIndex}, evaluated on save.
+     */
+    @Index
+    @IgnoreLoad
+    @IgnoreSave( IfNull.class )
+    private HashMap<String, Object> likeIndex;
+
     public Integer getVersion()
     {
         if ( version == null )
@@ -348,6 +359,8 @@ public abstract class BaseEntityIdentity<ID_TYPE>
     /**
      * This method will be called before every update.
      * It evaluates <code>createdDate</code>or <code>modificationDate</code>.
+     * The derived properties of the fields annotated with {@link LikeIndex} are evaluated.
+     * The cached query results of this kind are invalidated, see {@link QueryCache}.
      */
     @OnSave
     private void onSave()
@@ -373,6 +386,18 @@ public abstract class BaseEntityIdentity<ID_TYPE>
             modificationDate = new Date();
             version++;
         }
+
+        likeIndex = LikeIndexes.derive( this );
+        QueryResultCache.invalidate( getClass() );
+    }
+
+    /**
+     * This method has to be called by {@link #delete()} implementation once the entity has been deleted.
+     * The cached query results of this kind are invalidated, see {@link QueryCache}.
+     */
+    protected void onDelete()
+    {
+        QueryResultCache.invalidate( getClass() );
     }
 
     @OnLoad
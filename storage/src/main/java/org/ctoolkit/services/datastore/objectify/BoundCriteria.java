@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.google.common.collect.ImmutableList;
+import org.ctoolkit.services.storage.CompiledCriteria;
+import org.ctoolkit.services.storage.EntityExecutor;
+import org.ctoolkit.services.storage.criteria.BetweenExpression;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.CriteriaBuilder;
+import org.ctoolkit.services.storage.criteria.Expression;
+import org.ctoolkit.services.storage.criteria.IdInExpression;
+import org.ctoolkit.services.storage.criteria.InExpression;
+import org.ctoolkit.services.storage.criteria.LikeExpression;
+import org.ctoolkit.services.storage.criteria.LogicalExpression;
+import org.ctoolkit.services.storage.criteria.NameInExpression;
+import org.ctoolkit.services.storage.criteria.NullExpression;
+import org.ctoolkit.services.storage.criteria.OrderRule;
+import org.ctoolkit.services.storage.criteria.Parameter;
+import org.ctoolkit.services.storage.criteria.PropertyExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceIdExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceNameExpression;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The compiled criteria that can not be executed as a single Objectify query (OR, IN, id in expression
+ * or residual filter, see {@link CriteriaPlanner}). The parameter values are bound in to the new criteria
+ * at execution, which is then executed by the entity executor.
+ * <p>
+ * The single {@link Parameter} of the IN expression is bound to the whole collection (or array) of values.
+ *
+ * @param <E> the entity type
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+class BoundCriteria<E>
+        implements CompiledCriteria<E>
+{
+    private final Class<E> entityClass;
+
+    private final List<Expression> expressions;
+
+    private final List<OrderRule> orderRules;
+
+    private final int offset;
+
+    private final int limit;
+
+    private final int chunk;
+
+    private final Boolean hybrid;
+
+    private final EntityExecutor executor;
+
+    BoundCriteria( @Nonnull Criteria<E> criteria, @Nonnull EntityExecutor executor )
+    {
+        checkNotNull( criteria );
+        this.entityClass = criteria.getEntityClass();
+        this.expressions = ImmutableList.copyOf( criteria.getExpressionList() );
+        this.orderRules = ImmutableList.copyOf( criteria.getOrderRules() );
+        this.offset = criteria.getOffset();
+        this.limit = criteria.getLimit();
+        this.chunk = criteria.getChunk();
+        this.hybrid = criteria.getHybrid();
+        this.executor = checkNotNull( executor );
+    }
+
+    /**
+     * Creates the criteria with the given parameter values bound.
+     *
+     * @param parameters the parameter values mapped by its name
+     * @return the criteria ready to be executed
+     */
+    Criteria<E> bind( @Nonnull Map<String, ?> parameters )
+    {
+        checkNotNull( parameters, "Parameters cannot be null" );
+
+        Binder<E> binder = new Binder<>( parameters );
+        Criteria<E> criteria = Criteria.of( entityClass );
+
+        for ( Expression expression : expressions )
+        {
+            criteria.addCriteria( expression.build( binder ) );
+        }
+        for ( OrderRule rule : orderRules )
+        {
+            criteria.addOrderRule( rule.getPropertyName(), rule.getOrder() );
+        }
+        if ( offset > 0 )
+        {
+            criteria.offset( offset );
+        }
+        if ( limit > 0 )
+        {
+            criteria.limit( limit );
+        }
+        criteria.chunk( chunk );
+        if ( hybrid != null )
+        {
+            criteria.hybrid( hybrid );
+        }
+        return criteria;
+    }
+
+    @Override
+    public List<E> list( @Nonnull Map<String, ?> parameters )
+    {
+        return executor.list( bind( parameters ) );
+    }
+
+    @Override
+    public E first( @Nonnull Map<String, ?> parameters )
+    {
+        return executor.first( bind( parameters ) );
+    }
+
+    @Override
+    public int count( @Nonnull Map<String, ?> parameters )
+    {
+        return executor.count( bind( parameters ) );
+    }
+
+    @Override
+    public List<Long> fetchIds( @Nonnull Map<String, ?> parameters )
+    {
+        return executor.fetchIds( bind( parameters ) );
+    }
+
+    @Override
+    public List<String> fetchNames( @Nonnull Map<String, ?> parameters )
+    {
+        return executor.fetchNames( bind( parameters ) );
+    }
+
+    /**
+     * Creates the copy of the expressions with the parameter values bound,
+     * the expressions with no parameter are returned as they are.
+     */
+    private static class Binder<E>
+            implements CriteriaBuilder<Expression, E>
+    {
+        private final Map<String, ?> parameters;
+
+        Binder( Map<String, ?> parameters )
+        {
+            this.parameters = parameters;
+        }
+
+        @Override
+        public Expression build( BetweenExpression expression )
+        {
+            return new BetweenExpression( expression.getPropertyName(),
+                    QueryPlan.bind( expression.getPropertyValue(), parameters ),
+                    QueryPlan.bind( expression.getHighPropertyValue(), parameters ),
+                    expression.getLowBound(),
+                    expression.getHighBound() );
+        }
+
+        @Override
+        public Expression build( InExpression expression )
+        {
+            Object[] values = expression.getPropertyValues();
+
+            if ( values.length == 1 && values[0] instanceof Parameter )
+            {
+                // the whole collection of values bound at once
+                Object bound = QueryPlan.bind( values[0], parameters );
+                if ( bound instanceof Collection )
+                {
+                    values = ( ( Collection<?> ) bound ).toArray();
+                }
+                else if ( bound instanceof Object[] )
+                {
+                    values = ( Object[] ) bound;
+                }
+                else
+                {
+                    values = new Object[]{bound};
+                }
+            }
+            else
+            {
+                values = values.clone();
+                for ( int index = 0; index < values.length; index++ )
+                {
+                    values[index] = QueryPlan.bind( values[index], parameters );
+                }
+            }
+            return new InExpression( expression.getPropertyName(), values, expression.getOperation() );
+        }
+
+        @Override
+        public Expression build( IdInExpression expression )
+        {
+            return expression;
+        }
+
+        @Override
+        public Expression build( NameInExpression expression )
+        {
+            return expression;
+        }
+
+        @Override
+        public Expression build( LikeExpression expression )
+        {
+            return expression;
+        }
+
+        @Override
+        public Expression build( LogicalExpression expression )
+        {
+            Expression[] bound = new Expression[expression.getExpressions().length];
+            for ( int index = 0; index < bound.length; index++ )
+            {
+                bound[index] = expression.getExpressions()[index].build( this );
+            }
+            return new LogicalExpression( expression.getOperation(), bound );
+        }
+
+        @Override
+        public Expression build( NullExpression expression )
+        {
+            return expression;
+        }
+
+        @Override
+        public Expression build( PropertyExpression expression )
+        {
+            return expression;
+        }
+
+        @Override
+        public Expression build( SimpleExpression expression )
+        {
+            return new SimpleExpression( expression.getPropertyName(),
+                    QueryPlan.bind( expression.getPropertyValue(), parameters ),
+                    expression.getOperation() );
+        }
+
+        @Override
+        public Expression build( ReferenceIdExpression expression )
+        {
+            return expression;
+        }
+
+        @Override
+        public Expression build( ReferenceNameExpression expression )
+        {
+            return expression;
+        }
+
+        @Override
+        public Expression build( Criteria<E> criteria )
+        {
+            throw new UnsupportedOperationException( "Use BoundCriteria.bind(Map)" );
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Ref;
+import org.ctoolkit.services.storage.criteria.BetweenExpression;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.CriteriaBuilder;
+import org.ctoolkit.services.storage.criteria.Expression;
+import org.ctoolkit.services.storage.criteria.IdInExpression;
+import org.ctoolkit.services.storage.criteria.InExpression;
+import org.ctoolkit.services.storage.criteria.LikeExpression;
+import org.ctoolkit.services.storage.criteria.LogicalExpression;
+import org.ctoolkit.services.storage.criteria.NameInExpression;
+import org.ctoolkit.services.storage.criteria.NullExpression;
+import org.ctoolkit.services.storage.criteria.OrderRule;
+import org.ctoolkit.services.storage.criteria.PropertyExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceIdExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceNameExpression;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+
+import java.util.Date;
+import java.util.StringJoiner;
+
+/**
+ * Builds the canonical string form of the {@link Criteria}. Two criteria with the same filters,
+ * order rules, offset and limit have the same canonical form, thus it can be used as a cache key.
+ * The values are represented by its type, length and {@link Object#toString()}, {@link Date} by its time
+ * and the entity reference by its key, for example {@code String:4:even}. The length prefix makes
+ * a value containing a delimiter distinguishable from the multiple values.
+ * <p>
+ * Cursor and chunk are not part of the canonical form.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+class CriteriaCanonicalizer<E>
+        implements CriteriaBuilder<String, E>
+{
+    /**
+     * Returns the canonical string form of the given criteria.
+     *
+     * @param criteria the criteria to be represented
+     * @param <E>      the entity type
+     * @return the canonical form
+     */
+    static <E> String canonical( Criteria<E> criteria )
+    {
+        return new CriteriaCanonicalizer<E>().build( criteria );
+    }
+
+    @Override
+    public String build( BetweenExpression expression )
+    {
+        return expression.getPropertyName()
+                + " " + expression.getLowBound() + " " + value( expression.getPropertyValue() )
+                + " between " + expression.getHighBound() + " " + value( expression.getHighPropertyValue() );
+    }
+
+    @Override
+    public String build( InExpression expression )
+    {
+        return expression.getPropertyName() + " in " + values( expression.getPropertyValues() );
+    }
+
+    @Override
+    public String build( IdInExpression expression )
+    {
+        return "__key__ in " + values( expression.getPropertyValues() );
+    }
+
+    @Override
+    public String build( NameInExpression expression )
+    {
+        return "__key__ in " + values( expression.getPropertyValues() );
+    }
+
+    @Override
+    public String build( LikeExpression expression )
+    {
+        return expression.getPropertyName() + " " + expression.getOperation()
+                + " " + value( expression.getPropertyValue() )
+                + " " + expression.getMatchMode() + ( expression.isIgnoreCase() ? " ignoreCase" : "" );
+    }
+
+    @Override
+    public String build( LogicalExpression expression )
+    {
+        StringJoiner joiner = new StringJoiner( " " + expression.getOperation().toLowerCase() + " ", "(", ")" );
+        for ( Expression e : expression.getExpressions() )
+        {
+            joiner.add( e.build( this ) );
+        }
+        return joiner.toString();
+    }
+
+    @Override
+    public String build( NullExpression expression )
+    {
+        return expression.getPropertyName() + " " + expression.getOperation();
+    }
+
+    @Override
+    public String build( PropertyExpression expression )
+    {
+        return expression.getPropertyName() + " " + expression.getOperation()
+                + " property " + expression.getOtherPropertyName();
+    }
+
+    @Override
+    public String build( SimpleExpression expression )
+    {
+        return expression.getPropertyName() + " " + expression.getOperation()
+                + " " + value( expression.getPropertyValue() );
+    }
+
+    @Override
+    public String build( ReferenceIdExpression expression )
+    {
+        return expression.getPropertyName() + " = "
+                + Key.create( expression.getRefClass(), expression.getPropertyValue() );
+    }
+
+    @Override
+    public String build( ReferenceNameExpression expression )
+    {
+        return expression.getPropertyName() + " = "
+                + Key.create( expression.getRefClass(), expression.getPropertyValue() );
+    }
+
+    @Override
+    public String build( Criteria<E> criteria )
+    {
+        StringBuilder builder = new StringBuilder( criteria.getEntityClass().getName() );
+
+        StringJoiner filters = new StringJoiner( " and ", " where ", "" ).setEmptyValue( "" );
+        for ( Expression expression : criteria.getExpressionList() )
+        {
+            filters.add( expression.build( this ) );
+        }
+        builder.append( filters );
+
+        StringJoiner orders = new StringJoiner( ", ", " order by ", "" ).setEmptyValue( "" );
+        for ( OrderRule rule : criteria.getOrderRules() )
+        {
+            orders.add( rule.getPropertyName() + " " + rule.getOrder() );
+        }
+        builder.append( orders );
+
+        if ( criteria.getOffset() > 0 )
+        {
+            builder.append( " offset " ).append( criteria.getOffset() );
+        }
+        if ( criteria.getLimit() > 0 )
+        {
+            builder.append( " limit " ).append( criteria.getLimit() );
+        }
+
+        return builder.toString();
+    }
+
+    private static String values( Object[] values )
+    {
+        StringJoiner joiner = new StringJoiner( ", ", "[", "]" );
+        if ( values != null )
+        {
+            for ( Object value : values )
+            {
+                joiner.add( value( value ) );
+            }
+        }
+        return joiner.toString();
+    }
+
+    private static String value( Object value )
+    {
+        if ( value == null )
+        {
+            return "null";
+        }
+        if ( value instanceof Object[] )
+        {
+            return values( ( Object[] ) value );
+        }
+        if ( value instanceof Iterable )
+        {
+            StringJoiner joiner = new StringJoiner( ", ", "[", "]" );
+            for ( Object item : ( Iterable<?> ) value )
+            {
+                joiner.add( value( item ) );
+            }
+            return joiner.toString();
+        }
+        if ( value instanceof Date )
+        {
+            return "Date:" + ( ( Date ) value ).getTime();
+        }
+        if ( value instanceof Ref )
+        {
+            return prefixed( "Key", ( ( Ref<?> ) value ).key().toString() );
+        }
+        return prefixed( value.getClass().getSimpleName(), value.toString() );
+    }
+
+    private static String prefixed( String type, String value )
+    {
+        return type + ":" + value.length() + ":" + value;
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import org.ctoolkit.services.storage.criteria.BetweenExpression;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.CriteriaBuilder;
+import org.ctoolkit.services.storage.criteria.Expression;
+import org.ctoolkit.services.storage.criteria.IdInExpression;
+import org.ctoolkit.services.storage.criteria.InExpression;
+import org.ctoolkit.services.storage.criteria.LikeExpression;
+import org.ctoolkit.services.storage.criteria.LogicalExpression;
+import org.ctoolkit.services.storage.criteria.MatchMode;
+import org.ctoolkit.services.storage.criteria.NameInExpression;
+import org.ctoolkit.services.storage.criteria.NullExpression;
+import org.ctoolkit.services.storage.criteria.OrderRule;
+import org.ctoolkit.services.storage.criteria.PropertyExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceIdExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceNameExpression;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+
+/**
+ * The criteria query planner. Splits the criteria expressions in to the ones served by the datastore index
+ * (pushed down to the query) and the residual ones evaluated in memory against the streamed query result,
+ * see {@link InMemoryCriteriaBuilder}.
+ * <p>
+ * All equality filters supported by the datastore are pushed down. The inequality filters are pushed down
+ * only for a single property, as the datastore requires. If the criteria has order rules, it must be
+ * the property of the first order rule, otherwise the property with both lower and upper bound (a range)
+ * is preferred to the one bounded only from one side. The rest of the inequality filters and the filters
+ * not supported by the datastore (property to property comparison, NOT LIKE, LIKE with no matching
+ * {@link LikeIndex}, NOT EQUAL, IS NOT NULL, OR with residual or inequality on another property) are residual.
+ * <p>
+ * The LIKE ANYWHERE longer than 3 characters is pushed down as the trigram equality filters, but matched
+ * as a whole in memory too, as the trigrams may be present in an entity not containing the value.
+ * <p>
+ * If any filter is residual, the offset and limit are applied in memory too.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+final class CriteriaPlanner
+{
+    private CriteriaPlanner()
+    {
+    }
+
+    /**
+     * Plans the execution of the given criteria.
+     *
+     * @param criteria the criteria to be planned
+     * @param <T>      the entity type
+     * @return the execution plan
+     */
+    static <T> Plan<T> plan( Criteria<T> criteria )
+    {
+        List<Expression> expressions = new ArrayList<>();
+        flatten( criteria.getExpressionList(), expressions );
+
+        Classifier<T> classifier = new Classifier<>( criteria.getEntityClass() );
+        List<Filter> filters = new ArrayList<>();
+        Map<String, Integer> inequalities = new LinkedHashMap<>();
+
+        for ( Expression expression : expressions )
+        {
+            Filter filter = expression.build( classifier );
+            filters.add( filter );
+
+            if ( filter.pushable && filter.inequality != null )
+            {
+                int range = ( filter.lower ? 1 : 0 ) | ( filter.upper ? 2 : 0 );
+                inequalities.merge( filter.inequality, range, ( left, right ) -> left | right );
+            }
+        }
+
+        String inequality = inequality( criteria, inequalities );
+
+        List<Expression> pushed = new ArrayList<>();
+        List<Expression> residual = new ArrayList<>();
+
+        for ( int index = 0; index < expressions.size(); index++ )
+        {
+            Filter filter = filters.get( index );
+            if ( filter.pushable && ( filter.inequality == null || filter.inequality.equals( inequality ) ) )
+            {
+                pushed.add( expressions.get( index ) );
+                if ( filter.recheck )
+                {
+                    // the datastore narrows the result, but does not match it exactly
+                    residual.add( expressions.get( index ) );
+                }
+            }
+            else
+            {
+                residual.add( expressions.get( index ) );
+            }
+        }
+
+        return new Plan<>( criteria, pushed, residual, inequality );
+    }
+
+    /**
+     * Returns the inequality property to be pushed down.
+     */
+    private static String inequality( Criteria<?> criteria, Map<String, Integer> inequalities )
+    {
+        List<OrderRule> orderRules = criteria.getOrderRules();
+        if ( !orderRules.isEmpty() )
+        {
+            // datastore requires the inequality property to be sorted first
+            String first = orderRules.get( 0 ).getPropertyName();
+            return inequalities.containsKey( first ) ? first : null;
+        }
+
+        String inequality = null;
+        int best = -1;
+        for ( Map.Entry<String, Integer> entry : inequalities.entrySet() )
+        {
+            // both bounds (a range) first
+            int score = entry.getValue() == 3 ? 2 : 1;
+            if ( score > best )
+            {
+                best = score;
+                inequality = entry.getKey();
+            }
+        }
+        return inequality;
+    }
+
+    private static void flatten( List<Expression> expressions, List<Expression> flattened )
+    {
+        for ( Expression expression : expressions )
+        {
+            if ( expression instanceof LogicalExpression
+                    && LogicalExpression.AND.equalsIgnoreCase( ( ( LogicalExpression ) expression ).getOperation() ) )
+            {
+                flatten( Arrays.asList( ( ( LogicalExpression ) expression ).getExpressions() ), flattened );
+            }
+            else
+            {
+                flattened.add( expression );
+            }
+        }
+    }
+
+    /**
+     * The criteria execution plan.
+     *
+     * @param <T> the entity type
+     */
+    static final class Plan<T>
+    {
+        private final Criteria<T> criteria;
+
+        private final Criteria<T> pushdown;
+
+        private final List<Expression> pushed;
+
+        private final List<Expression> residual;
+
+        private final Predicate<T> predicate;
+
+        private final String inequality;
+
+        private Plan( Criteria<T> criteria, List<Expression> pushed, List<Expression> residual, String inequality )
+        {
+            this.criteria = criteria;
+            this.pushed = pushed;
+            this.residual = residual;
+            this.inequality = inequality;
+
+            if ( residual.isEmpty() )
+            {
+                this.pushdown = criteria;
+                this.predicate = null;
+            }
+            else
+            {
+                Criteria<T> pushdown = Criteria.of( criteria.getEntityClass() );
+                pushed.forEach( pushdown::addCriteria );
+                for ( OrderRule rule : criteria.getOrderRules() )
+                {
+                    pushdown.addOrderRule( rule.getPropertyName(), rule.getOrder() );
+                }
+                pushdown.chunk( criteria.getChunk() );
+                if ( criteria.getHybrid() != null )
+                {
+                    pushdown.hybrid( criteria.getHybrid() );
+                }
+                this.pushdown = pushdown;
+
+                InMemoryCriteriaBuilder<T> builder = new InMemoryCriteriaBuilder<>();
+                Predicate<T> predicate = entity -> true;
+                for ( Expression expression : residual )
+                {
+                    predicate = predicate.and( expression.build( builder ) );
+                }
+                this.predicate = predicate;
+            }
+        }
+
+        /**
+         * Returns the boolean indicating whether any filter is evaluated in memory.
+         *
+         * @return true if there is a residual filter
+         */
+        boolean hasResidual()
+        {
+            return predicate != null;
+        }
+
+        /**
+         * Returns the criteria to be executed by the datastore. If there is no residual filter,
+         * it's the planned criteria itself, otherwise its copy with the pushed down filters,
+         * order rules and no offset, limit and cursor.
+         *
+         * @return the criteria to be executed by the datastore
+         */
+        Criteria<T> getPushdown()
+        {
+            return pushdown;
+        }
+
+        /**
+         * Returns the residual filter to be evaluated in memory.
+         *
+         * @return the residual predicate or <code>null</code> if none
+         */
+        Predicate<T> getResidual()
+        {
+            return predicate;
+        }
+
+        /**
+         * Returns the human readable description of this plan.
+         *
+         * @return the plan description
+         */
+        String explain()
+        {
+            CriteriaCanonicalizer<T> canonicalizer = new CriteriaCanonicalizer<>();
+            StringBuilder builder = new StringBuilder();
+
+            builder.append( "Entity: " ).append( criteria.getEntityClass().getName() );
+            builder.append( "\nDatastore filters: " ).append( join( pushed, canonicalizer ) );
+            if ( inequality != null )
+            {
+                builder.append( "\nInequality property: " ).append( inequality );
+            }
+            if ( DisjunctiveQuery.isDisjunctive( pushdown ) )
+            {
+                builder.append( "\nSub-queries (OR, IN): " ).append( DisjunctiveQuery.size( pushdown ) )
+                        .append( " concurrent keys-only, merged in memory" );
+            }
+
+            StringJoiner orders = new StringJoiner( ", " ).setEmptyValue( "none" );
+            for ( OrderRule rule : criteria.getOrderRules() )
+            {
+                orders.add( rule.getPropertyName() + " " + rule.getOrder() );
+            }
+            builder.append( "\nDatastore order: " ).append( orders );
+
+            builder.append( "\nResidual filters (in memory): " ).append( join( residual, canonicalizer ) );
+
+            if ( criteria.getOffset() > 0 || criteria.getLimit() > 0 )
+            {
+                builder.append( "\nOffset " ).append( criteria.getOffset() )
+                        .append( ", limit " ).append( criteria.getLimit() )
+                        .append( hasResidual() ? " (in memory)" : " (datastore)" );
+            }
+            return builder.toString();
+        }
+
+        private static <T> String join( List<Expression> expressions, CriteriaCanonicalizer<T> canonicalizer )
+        {
+            StringJoiner joiner = new StringJoiner( " and " ).setEmptyValue( "none" );
+            for ( Expression expression : expressions )
+            {
+                joiner.add( expression.build( canonicalizer ) );
+            }
+            return joiner.toString();
+        }
+    }
+
+    /**
+     * The datastore support of the single filter.
+     */
+    private static final class Filter
+    {
+        private static final Filter RESIDUAL = new Filter( false, null, false, false, false );
+
+        private static final Filter EQUALITY = new Filter( true, null, false, false, false );
+
+        private static final Filter EQUALITY_RECHECKED = new Filter( true, null, false, false, true );
+
+        private final boolean pushable;
+
+        private final String inequality;
+
+        private final boolean lower;
+
+        private final boolean upper;
+
+        /**
+         * Whether the pushed down filter has to be evaluated in memory too.
+         */
+        private final boolean recheck;
+
+        private Filter( boolean pushable, String inequality, boolean lower, boolean upper, boolean recheck )
+        {
+            this.pushable = pushable;
+            this.inequality = inequality;
+            this.lower = lower;
+            this.upper = upper;
+            this.recheck = recheck;
+        }
+
+        static Filter inequality( String property, boolean lower, boolean upper )
+        {
+            return new Filter( true, property, lower, upper, false );
+        }
+    }
+
+    /**
+     * Classifies the expressions by the datastore support, the same way {@link ObjectifyCriteriaBuilder} builds them.
+     */
+    private static final class Classifier<E>
+            implements CriteriaBuilder<Filter, E>
+    {
+        private final Class<E> entityClass;
+
+        Classifier( Class<E> entityClass )
+        {
+            this.entityClass = entityClass;
+        }
+
+        @Override
+        public Filter build( BetweenExpression expression )
+        {
+            return Filter.inequality( expression.getPropertyName(), true, true );
+        }
+
+        @Override
+        public Filter build( InExpression expression )
+        {
+            return Filter.EQUALITY;
+        }
+
+        @Override
+        public Filter build( IdInExpression expression )
+        {
+            // key filter 'in' is not supported by the Cloud Datastore SDK, see KeyLookup
+            return Filter.RESIDUAL;
+        }
+
+        @Override
+        public Filter build( NameInExpression expression )
+        {
+            return Filter.RESIDUAL;
+        }
+
+        @Override
+        public Filter build( LikeExpression expression )
+        {
+            if ( !"like".equals( expression.getOperation() ) )
+            {
+                return Filter.RESIDUAL;
+            }
+
+            String property = expression.getPropertyName();
+            MatchMode matchMode = expression.getMatchMode();
+
+            if ( matchMode == MatchMode.START )
+            {
+                if ( !expression.isIgnoreCase() )
+                {
+                    return Filter.inequality( property, true, true );
+                }
+                // the raw property range would miss the mixed case values
+                return LikeIndexes.serves( entityClass, expression, false )
+                        ? Filter.inequality( LikeIndexes.property( property, LikeIndexes.LOWER ), true, true )
+                        : Filter.RESIDUAL;
+            }
+            if ( matchMode == MatchMode.EXACT )
+            {
+                return !expression.isIgnoreCase() || LikeIndexes.serves( entityClass, expression, false )
+                        ? Filter.EQUALITY
+                        : Filter.RESIDUAL;
+            }
+            if ( matchMode == MatchMode.END )
+            {
+                return LikeIndexes.serves( entityClass, expression, false )
+                        ? Filter.inequality( LikeIndexes.property( property, LikeIndexes.REVERSED ), true, true )
+                        : Filter.RESIDUAL;
+            }
+            if ( matchMode == MatchMode.ANYWHERE )
+            {
+                String value = expression.getPropertyValue().toString().replace( "%", "" );
+                if ( value.length() < 3 || !LikeIndexes.serves( entityClass, expression, true ) )
+                {
+                    return Filter.RESIDUAL;
+                }
+                // a single trigram matches exactly, otherwise all trigrams may be present without the value
+                return value.length() == 3 ? Filter.EQUALITY : Filter.EQUALITY_RECHECKED;
+            }
+            return Filter.RESIDUAL;
+        }
+
+        @Override
+        public Filter build( LogicalExpression expression )
+        {
+            // each of the OR sub-queries is pushed down with the rest of the criteria,
+            // thus all of them must be supported and share the single inequality property
+            String inequality = null;
+            boolean lower = false;
+            boolean upper = false;
+            boolean recheck = false;
+
+            for ( Expression e : expression.getExpressions() )
+            {
+                Filter filter = e.build( this );
+                if ( !filter.pushable )
+                {
+                    return Filter.RESIDUAL;
+                }
+                recheck |= filter.recheck;
+                if ( filter.inequality != null )
+                {
+                    if ( inequality != null && !inequality.equals( filter.inequality ) )
+                    {
+                        return Filter.RESIDUAL;
+                    }
+                    inequality = filter.inequality;
+                    lower |= filter.lower;
+                    upper |= filter.upper;
+                }
+            }
+            return new Filter( true, inequality, lower, upper, recheck );
+        }
+
+        @Override
+        public Filter build( NullExpression expression )
+        {
+            // 'is not null' is a NOT EQUAL filter, not supported by the Cloud Datastore SDK
+            return "is null".equals( expression.getOperation() ) ? Filter.EQUALITY : Filter.RESIDUAL;
+        }
+
+        @Override
+        public Filter build( PropertyExpression expression )
+        {
+            return Filter.RESIDUAL;
+        }
+
+        @Override
+        public Filter build( SimpleExpression expression )
+        {
+            // NOT EQUAL is not supported by the Cloud Datastore SDK
+            switch ( expression.getOperation() )
+            {
+                case "=":
+                {
+                    return Filter.EQUALITY;
+                }
+                case ">":
+                case ">=":
+                {
+                    return Filter.inequality( expression.getPropertyName(), true, false );
+                }
+                case "<":
+                case "<=":
+                {
+                    return Filter.inequality( expression.getPropertyName(), false, true );
+                }
+                default:
+                {
+                    return Filter.RESIDUAL;
+                }
+            }
+        }
+
+        @Override
+        public Filter build( ReferenceIdExpression expression )
+        {
+            return Filter.EQUALITY;
+        }
+
+        @Override
+        public Filter build( ReferenceNameExpression expression )
+        {
+            return Filter.EQUALITY;
+        }
+
+        @Override
+        public Filter build( Criteria<E> criteria )
+        {
+            throw new UnsupportedOperationException( "Use CriteriaPlanner.plan(Criteria)" );
+        }
+    }
+}
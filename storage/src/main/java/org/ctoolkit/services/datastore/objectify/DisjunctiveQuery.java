@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.ObjectifyService;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.Expression;
+import org.ctoolkit.services.storage.criteria.InExpression;
+import org.ctoolkit.services.storage.criteria.LogicalExpression;
+import org.ctoolkit.services.storage.criteria.Order;
+import org.ctoolkit.services.storage.criteria.OrderRule;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+/**
+ * The criteria with OR logical expression executed on client side. The criteria is expanded into
+ * independent sub-queries (disjunctive normal form), each of them executed concurrently as keys-only query.
+ * The IN expression is expanded the same way, as OR of the equality filters per distinct value,
+ * as the 'in' filter is not supported by Objectify on Cloud Datastore.
+ * The keys are merged (k-way merge respecting the requested order), deduplicated, offset and limit applied,
+ * and then the entities are loaded by a single batch get.
+ * <p>
+ * Each sub-query fetches at most offset + limit keys. If ordered by a property, all of the fetched entities
+ * have to be loaded in order to be merged, otherwise (ordered by key) only the resulting ones.
+ * Cursor is not supported.
+ *
+ * @param <T> the concrete type of the entity
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+class DisjunctiveQuery<T>
+{
+    /**
+     * The maximum number of sub-queries, bounds the fan-out of the large IN value lists.
+     */
+    static final int MAX_SUB_QUERIES = 1000;
+
+    private final Criteria<T> criteria;
+
+    private final ExecutorService executor;
+
+    private final int limit;
+
+    private final List<Criteria<T>> subQueries = new ArrayList<>();
+
+    DisjunctiveQuery( Criteria<T> criteria, ExecutorService executor )
+    {
+        this( criteria, criteria.getLimit(), executor );
+    }
+
+    /**
+     * Creates the query with limit overriding the one of the criteria.
+     *
+     * @param criteria the criteria with OR expression
+     * @param limit    the maximum number of results, -1 for no limit
+     * @param executor the executor of the sub-queries
+     */
+    DisjunctiveQuery( Criteria<T> criteria, int limit, ExecutorService executor )
+    {
+        if ( !Strings.isNullOrEmpty( criteria.getCursor() ) )
+        {
+            throw new UnsupportedOperationException( "Cursor is not supported for criteria with OR expression !" );
+        }
+
+        this.criteria = criteria;
+        this.executor = executor;
+        this.limit = limit;
+
+        for ( List<Expression> conjunction : expand( criteria.getExpressionList() ) )
+        {
+            Criteria<T> subQuery = Criteria.of( criteria.getEntityClass() );
+            conjunction.forEach( subQuery::addCriteria );
+            criteria.getOrderRules().forEach( rule -> subQuery.addOrderRule( rule.getPropertyName(), rule.getOrder() ) );
+            subQuery.limit( max() ).chunk( criteria.getChunk() );
+
+            subQueries.add( subQuery );
+        }
+    }
+
+    /**
+     * Returns true if the given criteria contains OR logical expression or IN expression at any level.
+     *
+     * @param criteria the criteria to be checked
+     * @return true if criteria has to be executed as a disjunctive query
+     */
+    static boolean isDisjunctive( Criteria<?> criteria )
+    {
+        return hasDisjunction( criteria.getExpressionList() );
+    }
+
+    /**
+     * Returns the number of the sub-queries the given criteria expands to.
+     *
+     * @param criteria the criteria to be expanded
+     * @return the number of the sub-queries
+     */
+    static int size( Criteria<?> criteria )
+    {
+        return expand( criteria.getExpressionList() ).size();
+    }
+
+    private static boolean hasDisjunction( Collection<Expression> expressions )
+    {
+        for ( Expression expression : expressions )
+        {
+            if ( expression instanceof InExpression )
+            {
+                return true;
+            }
+            if ( expression instanceof LogicalExpression )
+            {
+                LogicalExpression logical = ( LogicalExpression ) expression;
+                if ( LogicalExpression.OR.equalsIgnoreCase( logical.getOperation() ) )
+                {
+                    return true;
+                }
+                if ( hasDisjunction( Arrays.asList( logical.getExpressions() ) ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Expands the conjunction of the expressions into the disjunctive normal form,
+     * the list of conjunctions with no OR expression.
+     *
+     * @param expressions the expressions to be expanded (AND)
+     * @return the list of conjunctions
+     */
+    private static List<List<Expression>> expand( Collection<Expression> expressions )
+    {
+        List<List<Expression>> result = new ArrayList<>();
+        result.add( new ArrayList<>() );
+
+        for ( Expression expression : expressions )
+        {
+            List<List<Expression>> alternatives = new ArrayList<>();
+
+            if ( expression instanceof LogicalExpression )
+            {
+                LogicalExpression logical = ( LogicalExpression ) expression;
+                if ( LogicalExpression.OR.equalsIgnoreCase( logical.getOperation() ) )
+                {
+                    for ( Expression disjunct : logical.getExpressions() )
+                    {
+                        alternatives.addAll( expand( Collections.singletonList( disjunct ) ) );
+                    }
+                }
+                else
+                {
+                    alternatives.addAll( expand( Arrays.asList( logical.getExpressions() ) ) );
+                }
+            }
+            else if ( expression instanceof InExpression )
+            {
+                InExpression in = ( InExpression ) expression;
+                for ( Object value : new LinkedHashSet<>( Arrays.asList( in.getPropertyValues() ) ) )
+                {
+                    alternatives.add( Collections.singletonList(
+                            new SimpleExpression( in.getPropertyName(), value, "=" ) ) );
+                }
+            }
+            else
+            {
+                alternatives.add( Collections.singletonList( expression ) );
+            }
+
+            List<List<Expression>> product = new ArrayList<>();
+            for ( List<Expression> prefix : result )
+            {
+                for ( List<Expression> alternative : alternatives )
+                {
+                    List<Expression> conjunction = new ArrayList<>( prefix );
+                    conjunction.addAll( alternative );
+                    product.add( conjunction );
+                }
+            }
+
+            if ( product.size() > MAX_SUB_QUERIES )
+            {
+                throw new IllegalArgumentException( "Criteria with OR or IN expression expands to more than "
+                        + MAX_SUB_QUERIES + " sub-queries" );
+            }
+            result = product;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the entities that meet the criteria.
+     *
+     * @return the list of entities
+     */
+    List<T> list()
+    {
+        List<Key<T>> keys = keys();
+        Map<Key<T>, T> entities = ofy().load().keys( keys );
+
+        List<T> list = new ArrayList<>( keys.size() );
+        for ( Key<T> key : keys )
+        {
+            T entity = entities.get( key );
+            // might have been deleted meanwhile
+            if ( entity != null )
+            {
+                list.add( entity );
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the keys of the entities that meet the criteria, in requested order.
+     *
+     * @return the list of entity keys
+     */
+    List<Key<T>> keys()
+    {
+        List<List<Key<T>>> results = execute();
+        Comparator<Key<T>> order;
+
+        if ( criteria.getOrderRules().isEmpty() )
+        {
+            order = Comparator.naturalOrder();
+        }
+        else
+        {
+            // ordered by property values, entities must be loaded to be merged
+            Set<Key<T>> union = new LinkedHashSet<>();
+            results.forEach( union::addAll );
+            Map<Key<T>, T> entities = ofy().load().keys( union );
+
+            order = ( left, right ) -> compare( entities.get( left ), entities.get( right ) );
+        }
+
+        return window( merge( results, order ) );
+    }
+
+    /**
+     * Returns the number of the unique entities that meet the criteria, offset and limit obeyed.
+     *
+     * @return the number of entities
+     */
+    int count()
+    {
+        Set<Key<T>> union = new HashSet<>();
+        execute().forEach( union::addAll );
+
+        int count = union.size() - Math.max( criteria.getOffset(), 0 );
+        if ( limit > 0 )
+        {
+            count = Math.min( count, limit );
+        }
+        return Math.max( count, 0 );
+    }
+
+    /**
+     * Executes the keys-only sub-queries concurrently, the first one on the calling thread.
+     *
+     * @return the list of keys per sub-query
+     */
+    private List<List<Key<T>>> execute()
+    {
+        if ( subQueries.isEmpty() )
+        {
+            // IN with no value
+            return new ArrayList<>();
+        }
+
+        List<Future<List<Key<T>>>> futures = new ArrayList<>();
+        for ( Criteria<T> subQuery : subQueries.subList( 1, subQueries.size() ) )
+        {
+            // the worker thread has no Objectify context, keys-only query does not need the session anyway
+            futures.add( executor.submit( () -> ObjectifyService.run( () -> keys( subQuery ) ) ) );
+        }
+
+        List<List<Key<T>>> results = new ArrayList<>();
+        results.add( keys( subQueries.get( 0 ) ) );
+
+        for ( Future<List<Key<T>>> future : futures )
+        {
+            try
+            {
+                results.add( future.get() );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                futures.forEach( f -> f.cancel( true ) );
+                throw new IllegalStateException( "Interrupted while waiting for the sub-query", e );
+            }
+            catch ( ExecutionException e )
+            {
+                futures.forEach( f -> f.cancel( true ) );
+                Throwables.throwIfUnchecked( e.getCause() );
+                throw new IllegalStateException( e.getCause() );
+            }
+        }
+
+        return results;
+    }
+
+    private List<Key<T>> keys( Criteria<T> subQuery )
+    {
+        return new ArrayList<>( new ObjectifyCriteriaBuilder<T>().build( subQuery ).keys().list() );
+    }
+
+    /**
+     * The k-way merge of the sorted lists, duplicates are skipped.
+     *
+     * @param sorted the sorted lists
+     * @param order  the order of the lists
+     * @return the merged list, at most offset + limit long
+     */
+    private List<Key<T>> merge( List<List<Key<T>>> sorted, Comparator<Key<T>> order )
+    {
+        int max = max();
+
+        // head of the each list: [list index, position]
+        PriorityQueue<int[]> heads = new PriorityQueue<>( Math.max( sorted.size(), 1 ),
+                ( left, right ) -> order.compare( sorted.get( left[0] ).get( left[1] ),
+                        sorted.get( right[0] ).get( right[1] ) ) );
+
+        for ( int index = 0; index < sorted.size(); index++ )
+        {
+            if ( !sorted.get( index ).isEmpty() )
+            {
+                heads.add( new int[]{index, 0} );
+            }
+        }
+
+        Set<Key<T>> seen = new HashSet<>();
+        List<Key<T>> merged = new ArrayList<>();
+
+        while ( !heads.isEmpty() && ( max < 0 || merged.size() < max ) )
+        {
+            int[] head = heads.poll();
+            List<Key<T>> list = sorted.get( head[0] );
+            Key<T> key = list.get( head[1] );
+
+            if ( seen.add( key ) )
+            {
+                merged.add( key );
+            }
+            if ( head[1] + 1 < list.size() )
+            {
+                heads.add( new int[]{head[0], head[1] + 1} );
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Returns the maximum number of keys to be fetched per sub-query, offset included.
+     *
+     * @return the maximum number of keys, -1 for no limit
+     */
+    private int max()
+    {
+        return limit > 0 ? Math.max( criteria.getOffset(), 0 ) + limit : -1;
+    }
+
+    private List<Key<T>> window( List<Key<T>> merged )
+    {
+        int offset = Math.max( criteria.getOffset(), 0 );
+        if ( offset >= merged.size() )
+        {
+            return new ArrayList<>();
+        }
+        return merged.subList( offset, merged.size() );
+    }
+
+    /**
+     * Compares the entities by the criteria order rules, then by key (datastore default).
+     */
+    private int compare( T left, T right )
+    {
+        if ( left == null || right == null )
+        {
+            // deleted meanwhile, will be skipped while loading
+            return left == null ? ( right == null ? 0 : 1 ) : -1;
+        }
+
+        for ( OrderRule rule : criteria.getOrderRules() )
+        {
+            int result = EntityProperties.VALUE_ORDER.compare( EntityProperties.get( left, rule.getPropertyName() ),
+                    EntityProperties.get( right, rule.getPropertyName() ) );
+
+            if ( result != 0 )
+            {
+                return rule.getOrder() == Order.DESC ? -result : result;
+            }
+        }
+
+        return Key.create( left ).compareTo( Key.create( right ) );
+    }
+}
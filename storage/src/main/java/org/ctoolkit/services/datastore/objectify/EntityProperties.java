@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.google.common.base.Splitter;
+import com.googlecode.objectify.Ref;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The helper to read the entity property values in memory, the way datastore sees them.
+ * The property is resolved as the field of the same name (the Objectify default mapping),
+ * nested embedded property as dot separated path. The property is read by the method handle getter,
+ * resolved once per type.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+final class EntityProperties
+{
+    private static final Map<String, Function<Object, Object>> ACCESSORS = new ConcurrentHashMap<>();
+
+    /**
+     * Orders the values as datastore does for values of the same type, <code>null</code> first.
+     * The numbers are ordered by its value regardless of the integer or floating point type.
+     */
+    static final Comparator<Object> VALUE_ORDER = EntityProperties::compareValues;
+
+    private EntityProperties()
+    {
+    }
+
+    /**
+     * Returns the value of the given entity property.
+     *
+     * @param entity   the entity instance
+     * @param property the property name, dot separated path for embedded property
+     * @return the property value or <code>null</code> if not set
+     * @throws IllegalArgumentException if the entity has no such property
+     */
+    static Object get( Object entity, String property )
+    {
+        return accessor( property ).apply( entity );
+    }
+
+    /**
+     * Returns the accessor of the given property, to be reused for any entity.
+     * The accessor is cached per property, the getter of each path segment is resolved once per type.
+     *
+     * @param property the property name, dot separated path for embedded property
+     * @return the property value accessor, returns <code>null</code> if property or its parent is not set
+     */
+    static Function<Object, Object> accessor( String property )
+    {
+        return ACCESSORS.computeIfAbsent( property, EntityProperties::newAccessor );
+    }
+
+    private static Function<Object, Object> newAccessor( String property )
+    {
+        List<ClassValue<MethodHandle>> path = new ArrayList<>();
+        for ( String name : Splitter.on( '.' ).split( property ) )
+        {
+            path.add( new ClassValue<MethodHandle>()
+            {
+                @Override
+                protected MethodHandle computeValue( Class<?> type )
+                {
+                    return getter( type, name );
+                }
+            } );
+        }
+
+        return entity -> {
+            Object value = entity;
+            for ( ClassValue<MethodHandle> getter : path )
+            {
+                if ( value == null )
+                {
+                    return null;
+                }
+                try
+                {
+                    value = ( Object ) getter.get( value.getClass() ).invokeExact( value );
+                }
+                catch ( RuntimeException | Error e )
+                {
+                    throw e;
+                }
+                catch ( Throwable e )
+                {
+                    throw new IllegalArgumentException( "Property '" + property + "' is not accessible", e );
+                }
+            }
+            return value;
+        };
+    }
+
+    /**
+     * Returns the boolean indicating whether the values are of the same type as datastore sees them
+     * (any two numbers are comparable by its value), thus comparable by {@link #VALUE_ORDER}.
+     *
+     * @param left  the first non null value
+     * @param right the second non null value
+     * @return true if comparable
+     */
+    static boolean comparable( Object left, Object right )
+    {
+        left = normalize( left );
+        right = normalize( right );
+
+        if ( left instanceof Number && right instanceof Number )
+        {
+            return true;
+        }
+        return left.getClass() == right.getClass() && left instanceof Comparable;
+    }
+
+    private static boolean floating( Object number )
+    {
+        return number instanceof Double || number instanceof Float;
+    }
+
+    private static MethodHandle getter( Class<?> type, String name )
+    {
+        for ( Class<?> current = type; current != null; current = current.getSuperclass() )
+        {
+            try
+            {
+                Field field = current.getDeclaredField( name );
+                field.setAccessible( true );
+
+                return MethodHandles.lookup()
+                        .unreflectGetter( field )
+                        .asType( MethodType.methodType( Object.class, Object.class ) );
+            }
+            catch ( NoSuchFieldException ignored )
+            {
+                // try the superclass
+            }
+            catch ( IllegalAccessException e )
+            {
+                throw new IllegalArgumentException( "Property '" + name + "' is not accessible", e );
+            }
+        }
+        throw new IllegalArgumentException( "Property '" + name + "' not found in " + type.getName() );
+    }
+
+    @SuppressWarnings( value = "unchecked" )
+    private static int compareValues( Object left, Object right )
+    {
+        left = normalize( left );
+        right = normalize( right );
+
+        if ( left == right )
+        {
+            return 0;
+        }
+        if ( left == null )
+        {
+            return -1;
+        }
+        if ( right == null )
+        {
+            return 1;
+        }
+
+        if ( left instanceof Number && right instanceof Number )
+        {
+            if ( floating( left ) || floating( right ) )
+            {
+                return Double.compare( ( ( Number ) left ).doubleValue(), ( ( Number ) right ).doubleValue() );
+            }
+            return Long.compare( ( ( Number ) left ).longValue(), ( ( Number ) right ).longValue() );
+        }
+
+        if ( left.getClass() == right.getClass() && left instanceof Comparable )
+        {
+            return ( ( Comparable<Object> ) left ).compareTo( right );
+        }
+
+        // different types, keep it at least deterministic
+        return left.getClass().getName().compareTo( right.getClass().getName() );
+    }
+
+    private static Object normalize( Object value )
+    {
+        if ( value instanceof Enum )
+        {
+            // stored as a name
+            return ( ( Enum<?> ) value ).name();
+        }
+        if ( value instanceof Ref )
+        {
+            return ( ( Ref<?> ) value ).key();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Ref;
+import org.ctoolkit.services.storage.EntityIdentity;
+import org.ctoolkit.services.storage.criteria.BetweenExpression;
+import org.ctoolkit.services.storage.criteria.Bound;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.CriteriaBuilder;
+import org.ctoolkit.services.storage.criteria.Expression;
+import org.ctoolkit.services.storage.criteria.IdInExpression;
+import org.ctoolkit.services.storage.criteria.InExpression;
+import org.ctoolkit.services.storage.criteria.LikeExpression;
+import org.ctoolkit.services.storage.criteria.LogicalExpression;
+import org.ctoolkit.services.storage.criteria.MatchMode;
+import org.ctoolkit.services.storage.criteria.NameInExpression;
+import org.ctoolkit.services.storage.criteria.NullExpression;
+import org.ctoolkit.services.storage.criteria.Order;
+import org.ctoolkit.services.storage.criteria.OrderRule;
+import org.ctoolkit.services.storage.criteria.PropertyExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceIdExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceNameExpression;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The in-memory CriteriaBuilder implementation. All expression produces a {@link Predicate} evaluated
+ * against the entities already loaded (session cache, loaded collections), no datastore round trip.
+ * It supports all expressions including those not supported by the datastore query
+ * (property to property comparison, any LIKE match mode, OR).
+ * <p>
+ * The predicate follows the datastore semantics: a multi-valued (collection) property matches
+ * if any of its values matches, values of the different types never match an inequality
+ * (the numbers are compared by its value regardless of the integer or floating point type),
+ * the entity reference is compared by its key. The property values are read by the accessors
+ * resolved once per entity type, see {@link EntityProperties}.
+ * <p>
+ * The built predicate and comparator are immutable and thread safe.
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * List&#60;Entity&#62; filtered = InMemoryCriteriaBuilder.filter( criteria, entities );
+ * </pre>
+ *
+ * @param <E> the entity type
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class InMemoryCriteriaBuilder<E>
+        implements CriteriaBuilder<Predicate<E>, E>
+{
+    /**
+     * Returns the predicate of the expressions of the given criteria.
+     *
+     * @param criteria the criteria to be compiled
+     * @param <E>      the entity type
+     * @return the predicate matching the entities that meet the criteria
+     */
+    public static <E> Predicate<E> predicate( @Nonnull Criteria<E> criteria )
+    {
+        return new InMemoryCriteriaBuilder<E>().build( criteria );
+    }
+
+    /**
+     * Returns the comparator of the order rules of the given criteria.
+     * If criteria has no order rule the comparator keeps the order (all entities are equal).
+     *
+     * @param criteria the criteria to be compiled
+     * @param <E>      the entity type
+     * @return the comparator ordering entities by the criteria order rules
+     */
+    public static <E> Comparator<E> comparator( @Nonnull Criteria<E> criteria )
+    {
+        Comparator<E> comparator = ( left, right ) -> 0;
+        for ( OrderRule rule : checkNotNull( criteria ).getOrderRules() )
+        {
+            Function<Object, Object> accessor = EntityProperties.accessor( rule.getPropertyName() );
+            Comparator<E> next = Comparator.comparing( accessor::apply, EntityProperties.VALUE_ORDER );
+            comparator = comparator.thenComparing( rule.getOrder() == Order.DESC ? next.reversed() : next );
+        }
+        return comparator;
+    }
+
+    /**
+     * Filters and orders the given entities by the criteria, offset and limit are obeyed.
+     *
+     * @param criteria the criteria to be applied
+     * @param entities the entities to be filtered
+     * @param <E>      the entity type
+     * @return the new list of entities that meet the criteria
+     */
+    public static <E> List<E> filter( @Nonnull Criteria<E> criteria, @Nonnull Collection<E> entities )
+    {
+        Stream<E> stream = entities.stream()
+                .filter( predicate( criteria ) )
+                .sorted( comparator( criteria ) );
+
+        if ( criteria.getOffset() > 0 )
+        {
+            stream = stream.skip( criteria.getOffset() );
+        }
+        if ( criteria.getLimit() > 0 )
+        {
+            stream = stream.limit( criteria.getLimit() );
+        }
+        return stream.collect( Collectors.toList() );
+    }
+
+    @Override
+    public Predicate<E> build( BetweenExpression expression )
+    {
+        Predicate<E> low = compare( expression.getPropertyName(),
+                expression.getLowBound() == Bound.SOFT ? ">=" : ">",
+                expression.getPropertyValue() );
+
+        Predicate<E> high = compare( expression.getPropertyName(),
+                expression.getHighBound() == Bound.SOFT ? "<=" : "<",
+                expression.getHighPropertyValue() );
+
+        return low.and( high );
+    }
+
+    @Override
+    public Predicate<E> build( InExpression expression )
+    {
+        List<Object> values = Arrays.asList( expression.getPropertyValues().clone() );
+        return any( expression.getPropertyName(), value -> values.stream().anyMatch( other -> equal( value, other ) ) );
+    }
+
+    @Override
+    public Predicate<E> build( IdInExpression expression )
+    {
+        Set<Object> ids = new HashSet<>( Arrays.asList( expression.getPropertyValues() ) );
+        return entity -> ids.contains( id( entity, expression.getPropertyName() ) );
+    }
+
+    @Override
+    public Predicate<E> build( NameInExpression expression )
+    {
+        Set<Object> names = new HashSet<>( Arrays.asList( expression.getPropertyValues() ) );
+        return entity -> names.contains( id( entity, expression.getPropertyName() ) );
+    }
+
+    @Override
+    public Predicate<E> build( LikeExpression expression )
+    {
+        String pattern = expression.getPropertyValue().toString().replace( "%", "" );
+        MatchMode matchMode = expression.getMatchMode();
+        boolean ignoreCase = expression.isIgnoreCase();
+
+        Predicate<String> matches;
+        if ( matchMode == MatchMode.START )
+        {
+            matches = value -> value.startsWith( pattern );
+        }
+        else if ( matchMode == MatchMode.END )
+        {
+            matches = value -> value.endsWith( pattern );
+        }
+        else if ( matchMode == MatchMode.ANYWHERE )
+        {
+            matches = value -> value.contains( pattern );
+        }
+        else
+        {
+            matches = value -> value.equals( pattern );
+        }
+
+        Predicate<E> like = any( expression.getPropertyName(), value -> value != null
+                && matches.test( ignoreCase ? value.toString().toLowerCase() : value.toString() ) );
+
+        return "not like".equals( expression.getOperation() ) ? like.negate() : like;
+    }
+
+    @Override
+    public Predicate<E> build( LogicalExpression expression )
+    {
+        boolean or = LogicalExpression.OR.equalsIgnoreCase( expression.getOperation() );
+        Predicate<E> predicate = entity -> !or;
+
+        for ( Expression e : expression.getExpressions() )
+        {
+            Predicate<E> next = e.build( this );
+            predicate = or ? predicate.or( next ) : predicate.and( next );
+        }
+        return predicate;
+    }
+
+    @Override
+    public Predicate<E> build( NullExpression expression )
+    {
+        Function<Object, Object> accessor = EntityProperties.accessor( expression.getPropertyName() );
+        if ( "is null".equals( expression.getOperation() ) )
+        {
+            return entity -> accessor.apply( entity ) == null;
+        }
+        return entity -> accessor.apply( entity ) != null;
+    }
+
+    @Override
+    public Predicate<E> build( PropertyExpression expression )
+    {
+        Function<Object, Object> accessor = EntityProperties.accessor( expression.getPropertyName() );
+        Function<Object, Object> other = EntityProperties.accessor( expression.getOtherPropertyName() );
+        BiPredicate<Object, Object> operator = operator( expression.getOperation() );
+
+        return entity -> {
+            Object otherValue = other.apply( entity );
+            return any( accessor.apply( entity ), value -> operator.test( value, otherValue ) );
+        };
+    }
+
+    @Override
+    public Predicate<E> build( SimpleExpression expression )
+    {
+        return compare( expression.getPropertyName(), expression.getOperation(), expression.getPropertyValue() );
+    }
+
+    @Override
+    public Predicate<E> build( ReferenceIdExpression expression )
+    {
+        return reference( expression.getPropertyName(), expression.getRefClass(), expression.getPropertyValue() );
+    }
+
+    @Override
+    public Predicate<E> build( ReferenceNameExpression expression )
+    {
+        return reference( expression.getPropertyName(), expression.getRefClass(), expression.getPropertyValue() );
+    }
+
+    @Override
+    public Predicate<E> build( Criteria<E> criteria )
+    {
+        checkNotNull( criteria, "Criteria instance cannot be null" );
+
+        Predicate<E> predicate = entity -> true;
+        for ( Expression expression : criteria.getExpressionList() )
+        {
+            predicate = predicate.and( expression.build( this ) );
+        }
+        return predicate;
+    }
+
+    private Predicate<E> compare( String property, String operation, Object expected )
+    {
+        BiPredicate<Object, Object> operator = operator( operation );
+        return any( property, value -> operator.test( value, expected ) );
+    }
+
+    private static BiPredicate<Object, Object> operator( String operation )
+    {
+        switch ( operation )
+        {
+            case "=":
+            {
+                return InMemoryCriteriaBuilder::equal;
+            }
+            case "<>":
+            case "!=":
+            {
+                return ( value, expected ) -> !equal( value, expected );
+            }
+            case ">":
+            {
+                return ( value, expected ) -> compare( value, expected, result -> result > 0 );
+            }
+            case ">=":
+            {
+                return ( value, expected ) -> compare( value, expected, result -> result >= 0 );
+            }
+            case "<":
+            {
+                return ( value, expected ) -> compare( value, expected, result -> result < 0 );
+            }
+            case "<=":
+            {
+                return ( value, expected ) -> compare( value, expected, result -> result <= 0 );
+            }
+            default:
+            {
+                throw new UnsupportedOperationException( "Expression operation " + operation + " is not  supported !" );
+            }
+        }
+    }
+
+    private Predicate<E> reference( String property, Class<?> refClass, Object id )
+    {
+        String kind = Key.getKind( refClass );
+        return any( property, value -> {
+            Key<?> key = value instanceof Ref ? ( ( Ref<?> ) value ).key() : null;
+            if ( value instanceof Key )
+            {
+                key = ( Key<?> ) value;
+            }
+            return key != null && kind.equals( key.getKind() )
+                    && ( id.equals( key.getId() ) || id.equals( key.getName() ) );
+        } );
+    }
+
+    /**
+     * Matches if any value of the property matches, the way datastore evaluates multi-valued property.
+     */
+    private Predicate<E> any( String property, Predicate<Object> matches )
+    {
+        Function<Object, Object> accessor = EntityProperties.accessor( property );
+        return entity -> any( accessor.apply( entity ), matches );
+    }
+
+    private static boolean any( Object value, Predicate<Object> matches )
+    {
+        if ( value instanceof Collection )
+        {
+            for ( Object item : ( Collection<?> ) value )
+            {
+                if ( matches.test( item ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return matches.test( value );
+    }
+
+    private static boolean equal( Object value, Object expected )
+    {
+        if ( value == null || expected == null )
+        {
+            return Objects.equals( value, expected );
+        }
+        return EntityProperties.comparable( value, expected )
+                && EntityProperties.VALUE_ORDER.compare( value, expected ) == 0;
+    }
+
+    /**
+     * Tests the comparison result of the values of the same type. The values not comparable
+     * (either <code>null</code> or of the different type) never match the inequality.
+     */
+    private static boolean compare( Object value, Object expected, IntPredicate test )
+    {
+        if ( value == null || expected == null || !EntityProperties.comparable( value, expected ) )
+        {
+            return false;
+        }
+        return test.test( EntityProperties.VALUE_ORDER.compare( value, expected ) );
+    }
+
+    private static Object id( Object entity, String property )
+    {
+        if ( entity instanceof EntityIdentity )
+        {
+            return ( ( EntityIdentity<?> ) entity ).getId();
+        }
+        return EntityProperties.get( entity, property );
+    }
+}
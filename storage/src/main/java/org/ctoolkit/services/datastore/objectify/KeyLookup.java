@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.ObjectifyService;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.Expression;
+import org.ctoolkit.services.storage.criteria.IdInExpression;
+import org.ctoolkit.services.storage.criteria.LogicalExpression;
+import org.ctoolkit.services.storage.criteria.NameInExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+/**
+ * The criteria with id in (or name in) expression executed as a batch get of the entity keys,
+ * instead of the key filter query. The batch get is served by the Objectify session and global cache (if any).
+ * <p>
+ * The keys are loaded in batches of at most {@link #MAX_BATCH} keys (the datastore lookup limit),
+ * the first one on the calling thread, the rest of them concurrently. The loaded entities are ordered by key
+ * (the same as the key filter query) and the rest of the criteria (other filters, order rules, offset and limit)
+ * is applied in memory, see {@link InMemoryCriteriaBuilder}. Cursor is not supported.
+ *
+ * @param <T> the concrete type of the entity
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+class KeyLookup<T>
+{
+    /**
+     * The maximum number of keys in a single batch get.
+     */
+    static final int MAX_BATCH = 1000;
+
+    private final Criteria<T> criteria;
+
+    private final ExecutorService executor;
+
+    private final List<Key<T>> keys;
+
+    KeyLookup( Criteria<T> criteria, ExecutorService executor )
+    {
+        if ( !Strings.isNullOrEmpty( criteria.getCursor() ) )
+        {
+            throw new UnsupportedOperationException( "Cursor is not supported for criteria with id in expression !" );
+        }
+
+        this.criteria = criteria;
+        this.executor = executor;
+
+        // sorted and deduplicated, the same as the key filter query
+        TreeSet<Key<T>> keys = new TreeSet<>();
+        Class<T> entityClass = criteria.getEntityClass();
+        Expression lookup = lookup( criteria );
+
+        if ( lookup instanceof IdInExpression )
+        {
+            for ( Long id : ( ( IdInExpression ) lookup ).getPropertyValues() )
+            {
+                keys.add( Key.create( entityClass, id ) );
+            }
+        }
+        else if ( lookup instanceof NameInExpression )
+        {
+            for ( String name : ( ( NameInExpression ) lookup ).getPropertyValues() )
+            {
+                keys.add( Key.create( entityClass, name ) );
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException( "Criteria has no id in expression" );
+        }
+
+        this.keys = new ArrayList<>( keys );
+    }
+
+    /**
+     * Returns true if the given criteria contains id in (or name in) expression with no alternative (OR),
+     * thus it can be executed as a batch get.
+     *
+     * @param criteria the criteria to be checked
+     * @return true if criteria has to be executed as a key lookup
+     */
+    static boolean isLookup( Criteria<?> criteria )
+    {
+        return lookup( criteria ) != null && !DisjunctiveQuery.isDisjunctive( criteria );
+    }
+
+    /**
+     * Returns the id in expression with the least number of keys, or <code>null</code> if none.
+     */
+    private static Expression lookup( Criteria<?> criteria )
+    {
+        List<Expression> expressions = new ArrayList<>();
+        flatten( criteria.getExpressionList(), expressions );
+
+        Expression lookup = null;
+        int size = Integer.MAX_VALUE;
+
+        for ( Expression expression : expressions )
+        {
+            int next;
+            if ( expression instanceof IdInExpression )
+            {
+                next = ( ( IdInExpression ) expression ).getPropertyValues().length;
+            }
+            else if ( expression instanceof NameInExpression )
+            {
+                next = ( ( NameInExpression ) expression ).getPropertyValues().length;
+            }
+            else
+            {
+                continue;
+            }
+
+            if ( next < size )
+            {
+                lookup = expression;
+                size = next;
+            }
+        }
+        return lookup;
+    }
+
+    private static void flatten( Collection<Expression> expressions, List<Expression> flattened )
+    {
+        for ( Expression expression : expressions )
+        {
+            if ( expression instanceof LogicalExpression
+                    && LogicalExpression.AND.equalsIgnoreCase( ( ( LogicalExpression ) expression ).getOperation() ) )
+            {
+                flatten( Arrays.asList( ( ( LogicalExpression ) expression ).getExpressions() ), flattened );
+            }
+            else
+            {
+                flattened.add( expression );
+            }
+        }
+    }
+
+    /**
+     * Returns the entities that meet the criteria.
+     *
+     * @return the list of entities
+     */
+    List<T> list()
+    {
+        Map<Key<T>, T> loaded = new HashMap<>();
+        execute().forEach( loaded::putAll );
+
+        List<T> entities = new ArrayList<>( loaded.size() );
+        for ( Key<T> key : keys )
+        {
+            T entity = loaded.get( key );
+            // non existing entity is omitted
+            if ( entity != null )
+            {
+                entities.add( entity );
+            }
+        }
+        return InMemoryCriteriaBuilder.filter( criteria, entities );
+    }
+
+    /**
+     * Returns the keys of the entities that meet the criteria, in requested order.
+     * The datastore has no keys-only batch get, thus the entities are loaded in full (served by the session
+     * and global cache if any) to check its existence and to apply the rest of the criteria.
+     * The cost is the same as of the {@link #list()}.
+     *
+     * @return the list of entity keys
+     */
+    List<Key<T>> keys()
+    {
+        List<Key<T>> result = new ArrayList<>();
+        for ( T entity : list() )
+        {
+            result.add( Key.create( entity ) );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the human readable description of the lookup.
+     *
+     * @return the lookup description
+     */
+    String explain()
+    {
+        int batches = ( keys.size() + MAX_BATCH - 1 ) / MAX_BATCH;
+        return "Entity: " + criteria.getEntityClass().getName()
+                + "\nKey lookup: " + keys.size() + " keys in " + batches + " batch get(s)"
+                + "\nFilters, order, offset and limit: in memory";
+    }
+
+    /**
+     * Loads the key batches, the first one on the calling thread, the rest of them concurrently.
+     *
+     * @return the loaded entities per batch
+     */
+    private List<Map<Key<T>, T>> execute()
+    {
+        List<List<Key<T>>> batches = Lists.partition( keys, MAX_BATCH );
+        List<Map<Key<T>, T>> results = new ArrayList<>( batches.size() );
+        if ( batches.isEmpty() )
+        {
+            return results;
+        }
+
+        List<Future<Map<Key<T>, T>>> futures = new ArrayList<>();
+        for ( List<Key<T>> batch : batches.subList( 1, batches.size() ) )
+        {
+            // the worker thread has no Objectify context, the global cache is still shared
+            futures.add( executor.submit( () -> ObjectifyService.run( () -> load( batch ) ) ) );
+        }
+
+        results.add( load( batches.get( 0 ) ) );
+
+        for ( Future<Map<Key<T>, T>> future : futures )
+        {
+            try
+            {
+                results.add( future.get() );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                futures.forEach( f -> f.cancel( true ) );
+                throw new IllegalStateException( "Interrupted while waiting for the batch get", e );
+            }
+            catch ( ExecutionException e )
+            {
+                futures.forEach( f -> f.cancel( true ) );
+                Throwables.throwIfUnchecked( e.getCause() );
+                throw new IllegalStateException( e.getCause() );
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Loads the given keys by a batch get. The lazily loaded result is copied, thus the batch get
+     * is executed right away within the current Objectify context.
+     */
+    private Map<Key<T>, T> load( List<Key<T>> batch )
+    {
+        return new HashMap<>( ofy().load().keys( batch ) );
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maintains the derived indexed properties of the annotated string field in order to serve
+ * the LIKE expressions not supported by the datastore, see {@link BaseEntityIdentity}.
+ * The derived values are being evaluated on each save and stored as the embedded properties
+ * of the <code>likeIndex</code> property:
+ * <ul>
+ * <li><code>likeIndex.{field}_rev</code> the reversed value, serves {@code MatchMode.END}</li>
+ * <li><code>likeIndex.{field}_lower</code> the lower-cased value, serves ignore case
+ * {@code MatchMode.START} and {@code MatchMode.EXACT} (if {@link #ignoreCase()})</li>
+ * <li><code>likeIndex.{field}_tri</code> the set of the value trigrams, serves {@code MatchMode.ANYWHERE}
+ * (if {@link #anywhere()})</li>
+ * </ul>
+ * If {@link #ignoreCase()} all derived values are lower-cased, thus serve only the ignore case LIKE expressions
+ * (<code>ilike</code>), otherwise only the case sensitive ones.
+ * <p>
+ * The ANYWHERE match requires at least 3 characters and matches entities containing all trigrams of the value,
+ * thus a value longer than 3 characters may match an entity not containing the value as a whole.
+ * {@link ObjectifyEntityExecutor} matches such a value as a whole in memory, see {@link CriteriaPlanner}.
+ * Each trigram is an index entry, use it for short values like names or codes.
+ * The existing entities must be re-saved to get the derived properties.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+@Documented
+@Target( ElementType.FIELD )
+@Retention( RetentionPolicy.RUNTIME )
+public @interface LikeIndex
+{
+    /**
+     * Whether the derived values are lower-cased to serve the ignore case LIKE expressions.
+     *
+     * @return true for case insensitive index
+     */
+    boolean ignoreCase() default false;
+
+    /**
+     * Whether to maintain the trigrams to serve {@code MatchMode.ANYWHERE}.
+     *
+     * @return true to maintain the trigrams
+     */
+    boolean anywhere() default false;
+}
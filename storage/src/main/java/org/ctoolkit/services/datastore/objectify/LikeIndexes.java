@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.google.common.collect.ImmutableList;
+import org.ctoolkit.services.storage.criteria.LikeExpression;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The helper to evaluate the derived properties of the fields annotated with {@link LikeIndex}
+ * and to resolve their names for the query. The annotated fields are cached per type.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+final class LikeIndexes
+{
+    /**
+     * The name of the entity property holding the derived properties.
+     */
+    static final String PROPERTY = "likeIndex";
+
+    static final String REVERSED = "_rev";
+
+    static final String LOWER = "_lower";
+
+    static final String TRIGRAMS = "_tri";
+
+    private static final Map<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+
+    private LikeIndexes()
+    {
+    }
+
+    /**
+     * Evaluates the derived properties of the given entity.
+     *
+     * @param entity the entity instance
+     * @return the derived properties mapped by its name or <code>null</code> if entity has no annotated field
+     */
+    static HashMap<String, Object> derive( Object entity )
+    {
+        List<Field> fields = fields( entity.getClass() );
+        if ( fields.isEmpty() )
+        {
+            return null;
+        }
+
+        HashMap<String, Object> derived = new HashMap<>();
+        for ( Field field : fields )
+        {
+            Object value;
+            try
+            {
+                value = field.get( entity );
+            }
+            catch ( IllegalAccessException e )
+            {
+                throw new IllegalArgumentException( "Field '" + field.getName() + "' is not accessible", e );
+            }
+
+            if ( value == null )
+            {
+                continue;
+            }
+
+            LikeIndex index = field.getAnnotation( LikeIndex.class );
+            String name = field.getName();
+            String string = index.ignoreCase() ? value.toString().toLowerCase() : value.toString();
+
+            if ( index.ignoreCase() )
+            {
+                derived.put( name + LOWER, string );
+            }
+            derived.put( name + REVERSED, reverse( string ) );
+            if ( index.anywhere() )
+            {
+                derived.put( name + TRIGRAMS, new ArrayList<>( trigrams( string ) ) );
+            }
+        }
+        return derived;
+    }
+
+    /**
+     * Returns the index annotation of the given entity property.
+     *
+     * @param entityClass the entity class
+     * @param property    the property name
+     * @return the annotation or <code>null</code> if property is not annotated
+     */
+    static LikeIndex index( Class<?> entityClass, String property )
+    {
+        for ( Field field : fields( entityClass ) )
+        {
+            if ( field.getName().equals( property ) )
+            {
+                return field.getAnnotation( LikeIndex.class );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the boolean indicating whether the LIKE expression property is annotated by the matching index.
+     *
+     * @param entityClass the entity class
+     * @param expression  the LIKE expression
+     * @param anywhere    true if the trigrams are required
+     * @return true if the expression can be served by the derived properties
+     */
+    static boolean serves( Class<?> entityClass, LikeExpression expression, boolean anywhere )
+    {
+        LikeIndex index = index( entityClass, expression.getPropertyName() );
+        return index != null
+                && index.ignoreCase() == expression.isIgnoreCase()
+                && ( !anywhere || index.anywhere() );
+    }
+
+    /**
+     * Returns the full name of the derived property to be used in the query filter.
+     *
+     * @param property the annotated property name
+     * @param suffix   the derived property suffix
+     * @return the derived property name
+     */
+    static String property( String property, String suffix )
+    {
+        return PROPERTY + "." + property + suffix;
+    }
+
+    static String reverse( String value )
+    {
+        return new StringBuilder( value ).reverse().toString();
+    }
+
+    /**
+     * Returns the sorted distinct trigrams of the given value. The value shorter than 3 characters
+     * is the only trigram.
+     */
+    static List<String> trigrams( String value )
+    {
+        if ( value.length() < 3 )
+        {
+            return value.isEmpty() ? ImmutableList.of() : ImmutableList.of( value );
+        }
+
+        TreeSet<String> trigrams = new TreeSet<>();
+        for ( int index = 0; index + 3 <= value.length(); index++ )
+        {
+            trigrams.add( value.substring( index, index + 3 ) );
+        }
+        return ImmutableList.copyOf( trigrams );
+    }
+
+    private static List<Field> fields( Class<?> type )
+    {
+        return FIELDS.computeIfAbsent( type, key -> {
+            ImmutableList.Builder<Field> fields = ImmutableList.builder();
+            for ( Class<?> current = key; current != null; current = current.getSuperclass() )
+            {
+                for ( Field field : current.getDeclaredFields() )
+                {
+                    if ( field.isAnnotationPresent( LikeIndex.class ) )
+                    {
+                        field.setAccessible( true );
+                        fields.add( field );
+                    }
+                }
+            }
+            return fields.build();
+        } );
+    }
+}
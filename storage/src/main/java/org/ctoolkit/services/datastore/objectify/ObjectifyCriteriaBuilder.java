@@ -18,6 +18,8 @@
 
 package org.ctoolkit.services.datastore.objectify;
 
+import com.google.cloud.datastore.Cursor;
+import com.google.common.base.Strings;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.cmd.Query;
 import org.ctoolkit.services.storage.criteria.BetweenExpression;
@@ -119,38 +121,85 @@ class ObjectifyCriteriaBuilder<E>
     @Override
     public Query<E> build( LikeExpression expression )
     {
-        if ( expression.getMatchMode() != MatchMode.START )
-        {
-            throw new UnsupportedOperationException( "MatchMode " + expression.getMatchMode()
-                    + " is not  supported !" );
-        }
         if ( !"like".equals( expression.getOperation() ) )
         {
             throw new UnsupportedOperationException( "Expression operation " + expression.getOperation()
                     + " is not  supported !" );
         }
 
-        // [name like 'pas%'] is just a range query:
-        // objectify.query(MyEntity.class).filter("propertyName >=","value").filter("propertyName <", "value" + "\uFFFD");
-        // Note that you can index [name like '%pas'] by storing the reversed string as a separate field and
-        // using a range scan as above.
+        String property = expression.getPropertyName();
+        String value = expression.getPropertyValue().toString().replace( "%", "" );
+        MatchMode matchMode = expression.getMatchMode();
 
-        StringBuilder builder = new StringBuilder();
+        if ( matchMode == MatchMode.START )
+        {
+            if ( expression.isIgnoreCase() )
+            {
+                // the raw property range would miss the mixed case values
+                requireIndex( expression, false );
+                return range( LikeIndexes.property( property, LikeIndexes.LOWER ), value );
+            }
 
-        builder.append( expression.getPropertyName() );
-        builder.append( " " );
-        builder.append( ">=" );
+            // [name like 'pas%'] is just a range query:
+            // objectify.query(MyEntity.class).filter("propertyName >=","value").filter("propertyName <", "value" + "\uFFFD");
+            return range( property, value );
+        }
 
-        String value = expression.getPropertyValue().toString().replace( "%", "" );
-        query = query.filter( builder.toString(), value );
+        if ( matchMode == MatchMode.EXACT )
+        {
+            if ( !expression.isIgnoreCase() )
+            {
+                return query.filter( property + " =", value );
+            }
+            requireIndex( expression, false );
+            return query.filter( LikeIndexes.property( property, LikeIndexes.LOWER ) + " =", value );
+        }
 
-        builder = new StringBuilder();
+        if ( matchMode == MatchMode.END )
+        {
+            // [name like '%pas'] is a range query over the reversed value
+            requireIndex( expression, false );
+            return range( LikeIndexes.property( property, LikeIndexes.REVERSED ), LikeIndexes.reverse( value ) );
+        }
 
-        builder.append( expression.getPropertyName() );
-        builder.append( " " );
-        builder.append( "<" );
+        if ( matchMode == MatchMode.ANYWHERE )
+        {
+            // [name like '%pas%'] all trigrams of the value must be present, for a value longer than 3 characters
+            // the result has to be matched as a whole in memory, see CriteriaPlanner
+            requireIndex( expression, true );
+            if ( value.length() < 3 )
+            {
+                throw new UnsupportedOperationException( "MatchMode ANYWHERE requires at least 3 characters, got '"
+                        + value + "' !" );
+            }
 
-        return query.filter( builder.toString(), value + "\uFFFD" );
+            String condition = LikeIndexes.property( property, LikeIndexes.TRIGRAMS ) + " =";
+            for ( String trigram : LikeIndexes.trigrams( value ) )
+            {
+                query = query.filter( condition, trigram );
+            }
+            return query;
+        }
+
+        throw new UnsupportedOperationException( "MatchMode " + matchMode + " is not  supported !" );
+    }
+
+    /**
+     * Checks whether the LIKE expression property is annotated by the matching {@link LikeIndex}.
+     */
+    private void requireIndex( LikeExpression expression, boolean anywhere )
+    {
+        if ( !LikeIndexes.serves( entityClass, expression, anywhere ) )
+        {
+            throw new UnsupportedOperationException( "The LIKE expression of the property '"
+                    + expression.getPropertyName() + "' requires the field to be annotated by @LikeIndex( ignoreCase = "
+                    + expression.isIgnoreCase() + ( anywhere ? ", anywhere = true" : "" ) + " )" );
+        }
+    }
+
+    private Query<E> range( String property, String value )
+    {
+        return query.filter( property + " >=", value ).filter( property + " <", value + "\uFFFD" );
     }
 
     @Override
@@ -158,7 +207,8 @@ class ObjectifyCriteriaBuilder<E>
     {
         if ( "or".equalsIgnoreCase( expression.getOperation() ) )
         {
-            throw new UnsupportedOperationException( "OR logical operation is not supported !" );
+            // executed by ObjectifyEntityExecutor as separate sub-queries
+            throw new UnsupportedOperationException( "OR logical operation is not supported by a single query !" );
         }
 
         for ( Expression e : expression.getExpressions() )
@@ -172,19 +222,7 @@ class ObjectifyCriteriaBuilder<E>
     @Override
     public Query<E> build( NullExpression expression )
     {
-        String filterOperator;
-
-        if ( "is null".equals( expression.getOperation() ) )
-        {
-            filterOperator = "=";
-        }
-        else
-        {
-            filterOperator = "!=";
-        }
-
-        String condition = expression.getPropertyName() + " " + filterOperator;
-        return query.filter( condition, null );
+        return query.filter( condition( expression ), null );
     }
 
     @Override
@@ -197,15 +235,7 @@ class ObjectifyCriteriaBuilder<E>
     @Override
     public Query<E> build( SimpleExpression expression )
     {
-        String filterOperator = expression.getOperation();
-
-        if ( "<>".equals( filterOperator ) )
-        {
-            filterOperator = "!=";
-        }
-
-        String condition = expression.getPropertyName() + " " + filterOperator;
-        return query.filter( condition, expression.getPropertyValue() );
+        return query.filter( condition( expression ), expression.getPropertyValue() );
     }
 
     @Override
@@ -248,8 +278,13 @@ class ObjectifyCriteriaBuilder<E>
             }
         }
 
-        // set first result of the query
-        if ( criteria.getOffset() > 0 )
+        // continue where the previous page has ended
+        if ( !Strings.isNullOrEmpty( criteria.getCursor() ) )
+        {
+            query = query.startAt( cursor( criteria.getCursor() ) );
+        }
+        // set first result of the query, the cursor already includes the offset
+        else if ( criteria.getOffset() > 0 )
         {
             query = query.offset( criteria.getOffset() );
         }
@@ -258,7 +293,72 @@ class ObjectifyCriteriaBuilder<E>
         {
             query = query.limit( criteria.getLimit() );
         }
+        // set batch size of the query
+        if ( criteria.getChunk() > 0 )
+        {
+            query = query.chunk( criteria.getChunk() );
+        }
+        // keys-only query followed by batch load, otherwise decided by the entity @Cache annotation
+        if ( criteria.getHybrid() != null )
+        {
+            query = query.hybrid( criteria.getHybrid() );
+        }
 
         return query;
     }
+
+    /**
+     * Applies a single expression to the given query.
+     *
+     * @param query       the query to be filtered
+     * @param entityClass the entity class of the query
+     * @param expression  the expression to be applied
+     * @return the filtered query
+     */
+    Query<E> apply( Query<E> query, Class<E> entityClass, Expression expression )
+    {
+        this.entityClass = entityClass;
+        this.query = query;
+        return expression.build( this );
+    }
+
+    static String condition( SimpleExpression expression )
+    {
+        String filterOperator = expression.getOperation();
+
+        if ( "<>".equals( filterOperator ) )
+        {
+            filterOperator = "!=";
+        }
+
+        return expression.getPropertyName() + " " + filterOperator;
+    }
+
+    static String condition( NullExpression expression )
+    {
+        String filterOperator;
+
+        if ( "is null".equals( expression.getOperation() ) )
+        {
+            filterOperator = "=";
+        }
+        else
+        {
+            filterOperator = "!=";
+        }
+
+        return expression.getPropertyName() + " " + filterOperator;
+    }
+
+    private static Cursor cursor( String cursor )
+    {
+        try
+        {
+            return Cursor.fromUrlSafe( cursor );
+        }
+        catch ( RuntimeException e )
+        {
+            throw new IllegalArgumentException( "Invalid cursor: " + cursor, e );
+        }
+    }
 }
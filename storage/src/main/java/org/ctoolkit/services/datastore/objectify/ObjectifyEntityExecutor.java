@@ -18,17 +18,64 @@
 
 package org.ctoolkit.services.datastore.objectify;
 
+import com.google.cloud.datastore.QueryResults;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.datastore.v1.QueryResultBatch;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.Work;
+import com.googlecode.objectify.cmd.Query;
+import org.ctoolkit.services.storage.CompiledCriteria;
 import org.ctoolkit.services.storage.EntityExecutor;
+import org.ctoolkit.services.storage.IdChunk;
+import org.ctoolkit.services.storage.Page;
 import org.ctoolkit.services.storage.criteria.Criteria;
 
 import javax.annotation.Nonnull;
 import javax.inject.Singleton;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.googlecode.objectify.ObjectifyService.ofy;
 
 /**
  * The Objectify entity executor implementation.
+ * <p>
+ * The criteria with OR expression is executed as concurrent keys-only sub-queries merged on client side,
+ * see {@link DisjunctiveQuery} for its limitations.
+ * <p>
+ * Results of the entities annotated with {@link QueryCache} are served from the in-process query result cache
+ * by {@link #list(Criteria)}, {@link #count(Criteria)}, {@link #fetchIds(Criteria)} and {@link #fetchNames(Criteria)}.
+ * The cached list is being loaded as keys-only query followed by batch load.
+ * <p>
+ * The filters not served by the datastore index (for example the second inequality property or NOT LIKE)
+ * are evaluated in memory against the streamed query result, see {@link CriteriaPlanner} and {@link #explain(Criteria)}.
+ * The criteria with id in (or name in) expression is executed as a batch get, see {@link KeyLookup}.
  *
  * @author <a href="mailto:aurel.medvegy@ctoolkit.org">Aurel Medvegy</a>
  */
@@ -36,34 +83,225 @@ import java.util.List;
 public class ObjectifyEntityExecutor
         implements EntityExecutor
 {
+    private static final int SUB_QUERY_THREADS = 8;
+
+    private static final int ASYNC_THREADS = 16;
+
+    private static final int PLAN_CACHE_SIZE = 500;
+
+    private static final int DEFAULT_ID_CHUNK = 1000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool( SUB_QUERY_THREADS,
+            new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "criteria-sub-query-%d" ).build() );
+
+    /**
+     * Separated from the sub-query executor, an async query may wait for its own sub-queries.
+     */
+    private final ExecutorService asyncExecutor = Executors.newFixedThreadPool( ASYNC_THREADS,
+            new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "criteria-async-%d" ).build() );
+
+    private final QueryResultCache cache = QueryResultCache.instance();
+
+    /**
+     * The compiled criteria mapped by its canonical form along with the execution hints.
+     */
+    private final Cache<String, CompiledCriteria<?>> plans = CacheBuilder.newBuilder().maximumSize( PLAN_CACHE_SIZE ).build();
+
     @Override
     @SuppressWarnings( value = "unchecked" )
     public <T> List<T> list( @Nonnull Criteria<T> criteria )
     {
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            return new KeyLookup<>( criteria, executor ).list();
+        }
+        CriteriaPlanner.Plan<T> plan = CriteriaPlanner.plan( criteria );
+        if ( plan.hasResidual() )
+        {
+            return residual( criteria, plan ).collect( Collectors.toList() );
+        }
+        if ( isCached( criteria ) )
+        {
+            return cachedList( criteria );
+        }
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            return new DisjunctiveQuery<>( criteria, executor ).list();
+        }
         return new ObjectifyCriteriaBuilder<T>().build( criteria ).list();
     }
 
     @Override
     public <T> T first( @Nonnull Criteria<T> criteria )
     {
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            List<T> list = new KeyLookup<>( criteria, executor ).list();
+            return list.isEmpty() ? null : list.get( 0 );
+        }
+        CriteriaPlanner.Plan<T> plan = CriteriaPlanner.plan( criteria );
+        if ( plan.hasResidual() )
+        {
+            return residual( criteria, plan ).findFirst().orElse( null );
+        }
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            List<T> list = new DisjunctiveQuery<>( criteria, 1, executor ).list();
+            return list.isEmpty() ? null : list.get( 0 );
+        }
         return new ObjectifyCriteriaBuilder<T>().build( criteria ).first().now();
     }
 
+    @Override
+    public <T> Page<T> page( @Nonnull Criteria<T> criteria )
+    {
+        checkArgument( criteria.getLimit() > 0, "Criteria limit (page size) is mandatory" );
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            throw new UnsupportedOperationException( "Cursor is not supported for criteria with id in expression !" );
+        }
+        if ( CriteriaPlanner.plan( criteria ).hasResidual() )
+        {
+            throw new UnsupportedOperationException( "Cursor is not supported for criteria with residual filter !" );
+        }
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            throw new UnsupportedOperationException( "Cursor is not supported for criteria with OR expression !" );
+        }
+
+        QueryResults<T> results = new ObjectifyCriteriaBuilder<T>().build( criteria ).iterator();
+        List<T> items = new ArrayList<>( criteria.getLimit() );
+        while ( results.hasNext() )
+        {
+            items.add( results.next() );
+        }
+
+        // less than page size means there is nothing left
+        boolean more = items.size() == criteria.getLimit()
+                && results.getMoreResults() != QueryResultBatch.MoreResultsType.NO_MORE_RESULTS;
+
+        return new Page<>( items, more ? results.getCursorAfter().toUrlSafe() : null );
+    }
+
+    @Override
+    public <T> Iterator<T> iterate( @Nonnull Criteria<T> criteria )
+    {
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            return new KeyLookup<>( criteria, executor ).list().iterator();
+        }
+        CriteriaPlanner.Plan<T> plan = CriteriaPlanner.plan( criteria );
+        if ( plan.hasResidual() )
+        {
+            return residual( criteria, plan ).iterator();
+        }
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            // merged in memory, thus not lazy
+            return list( criteria ).iterator();
+        }
+        return new ObjectifyCriteriaBuilder<T>().build( criteria ).iterator();
+    }
+
+    @Override
+    public <T> Stream<T> stream( @Nonnull Criteria<T> criteria )
+    {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize( iterate( criteria ),
+                Spliterator.ORDERED | Spliterator.NONNULL );
+
+        return StreamSupport.stream( spliterator, false );
+    }
+
     @Override
     public <T> int count( @Nonnull Criteria<T> criteria )
     {
-        return new ObjectifyCriteriaBuilder<T>().build( criteria ).count();
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            return new KeyLookup<>( criteria, executor ).list().size();
+        }
+        CriteriaPlanner.Plan<T> plan = CriteriaPlanner.plan( criteria );
+        if ( plan.hasResidual() )
+        {
+            return ( int ) residual( criteria, plan ).count();
+        }
+        if ( isCached( criteria ) )
+        {
+            String query = "count:" + CriteriaCanonicalizer.canonical( criteria );
+            return cache.get( criteria.getEntityClass(), query, () -> queryCount( criteria ) );
+        }
+        return queryCount( criteria );
     }
 
     @Override
-    public <T> List<Long> fetchIds( @Nonnull Criteria<T> criteria )
+    public <T> int count( @Nonnull Criteria<T> criteria, int max )
+    {
+        checkArgument( max > 0, "The maximum count must be greater than zero" );
+        int limit = criteria.getLimit() > 0 ? Math.min( criteria.getLimit(), max ) : max;
+
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            return Math.min( new KeyLookup<>( criteria, executor ).list().size(), limit );
+        }
+
+        CriteriaPlanner.Plan<T> plan = CriteriaPlanner.plan( criteria );
+        if ( plan.hasResidual() )
+        {
+            return ( int ) residual( criteria, plan ).limit( limit ).count();
+        }
+
+        if ( isCached( criteria ) )
+        {
+            String query = "count:" + limit + ":" + CriteriaCanonicalizer.canonical( criteria );
+            return cache.get( criteria.getEntityClass(), query, () -> queryCount( criteria, limit ) );
+        }
+        return queryCount( criteria, limit );
+    }
+
+    @Override
+    public <T> List<Map<String, Object>> project( @Nonnull Criteria<T> criteria )
     {
-        ObjectifyCriteriaBuilder<T> builder = new ObjectifyCriteriaBuilder<>();
-        com.googlecode.objectify.cmd.Query<T> build = builder.build( criteria );
+        List<String> properties = criteria.getProjections();
+        checkArgument( !properties.isEmpty(), "Criteria projection is mandatory" );
+
+        boolean single = !KeyLookup.isLookup( criteria )
+                && !DisjunctiveQuery.isDisjunctive( criteria )
+                && !CriteriaPlanner.plan( criteria ).hasResidual();
+
+        List<T> entities;
+        if ( single )
+        {
+            // projection can not be hybrid
+            Query<T> query = new ObjectifyCriteriaBuilder<T>().build( criteria )
+                    .hybrid( false )
+                    .project( properties.toArray( new String[0] ) );
+
+            entities = query.distinct( criteria.isDistinct() ).list();
+        }
+        else
+        {
+            // not a single query, projected from the full entities
+            entities = list( criteria );
+        }
+
+        Collection<Map<String, Object>> rows = criteria.isDistinct() ? new LinkedHashSet<>() : new ArrayList<>();
+        for ( T entity : entities )
+        {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for ( String property : properties )
+            {
+                row.put( property, EntityProperties.get( entity, property ) );
+            }
+            rows.add( row );
+        }
+        return new ArrayList<>( rows );
+    }
 
+    @Override
+    public <T> List<Long> fetchIds( @Nonnull Criteria<T> criteria )
+    {
         List<Long> ids = new ArrayList<>();
 
-        for ( Key<T> key : build.keys() )
+        for ( Key<T> key : keys( criteria ) )
         {
             ids.add( key.getId() );
         }
@@ -74,16 +312,290 @@ public class ObjectifyEntityExecutor
     @Override
     public <T> List<String> fetchNames( @Nonnull Criteria<T> criteria )
     {
-        ObjectifyCriteriaBuilder<T> builder = new ObjectifyCriteriaBuilder<>();
-        com.googlecode.objectify.cmd.Query<T> build = builder.build( criteria );
-
         List<String> ids = new ArrayList<>();
 
-        for ( Key<T> key : build.keys() )
+        for ( Key<T> key : keys( criteria ) )
         {
             ids.add( key.getName() );
         }
 
         return ids;
     }
+
+    @Override
+    public <T> LongStream streamIds( @Nonnull Criteria<T> criteria )
+    {
+        CriteriaPlanner.Plan<T> plan = CriteriaPlanner.plan( criteria );
+        if ( plan.hasResidual() && !KeyLookup.isLookup( criteria ) )
+        {
+            return residual( criteria, plan ).mapToLong( entity -> Key.create( entity ).getId() );
+        }
+
+        Iterator<Key<T>> keys = DisjunctiveQuery.isDisjunctive( criteria ) || KeyLookup.isLookup( criteria )
+                ? keys( criteria ).iterator()
+                : new ObjectifyCriteriaBuilder<T>().build( criteria ).keys().iterator();
+
+        PrimitiveIterator.OfLong ids = new PrimitiveIterator.OfLong()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return keys.hasNext();
+            }
+
+            @Override
+            public long nextLong()
+            {
+                return keys.next().getId();
+            }
+        };
+
+        Spliterator.OfLong spliterator = Spliterators.spliteratorUnknownSize( ids,
+                Spliterator.ORDERED | Spliterator.NONNULL );
+
+        return StreamSupport.longStream( spliterator, false );
+    }
+
+    @Override
+    public <T> Stream<IdChunk> streamIdChunks( @Nonnull Criteria<T> criteria )
+    {
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            throw new UnsupportedOperationException( "Cursor is not supported for criteria with OR expression !" );
+        }
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            throw new UnsupportedOperationException( "Cursor is not supported for criteria with id in expression !" );
+        }
+        if ( CriteriaPlanner.plan( criteria ).hasResidual() )
+        {
+            throw new UnsupportedOperationException( "Cursor is not supported for criteria with residual filter !" );
+        }
+
+        int size = criteria.getChunk() > 0 ? criteria.getChunk() : DEFAULT_ID_CHUNK;
+        QueryResults<Key<T>> results = new ObjectifyCriteriaBuilder<T>().build( criteria )
+                .chunk( size )
+                .keys()
+                .iterator();
+
+        Iterator<IdChunk> chunks = new AbstractIterator<IdChunk>()
+        {
+            @Override
+            protected IdChunk computeNext()
+            {
+                long[] ids = new long[size];
+                int count = 0;
+
+                while ( count < size && results.hasNext() )
+                {
+                    ids[count++] = results.next().getId();
+                }
+                if ( count == 0 )
+                {
+                    return endOfData();
+                }
+
+                String cursor = results.getCursorAfter().toUrlSafe();
+                return new IdChunk( count == size ? ids : Arrays.copyOf( ids, count ), cursor );
+            }
+        };
+
+        Spliterator<IdChunk> spliterator = Spliterators.spliteratorUnknownSize( chunks,
+                Spliterator.ORDERED | Spliterator.NONNULL );
+
+        return StreamSupport.stream( spliterator, false );
+    }
+
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public <T> CompiledCriteria<T> compile( @Nonnull Criteria<T> criteria )
+    {
+        checkArgument( Strings.isNullOrEmpty( criteria.getCursor() ), "Cursor is not supported by compiled criteria" );
+        checkArgument( criteria.getProjections().isEmpty(), "Projection is not supported by compiled criteria" );
+
+        // chunk and hybrid are captured by the compiled criteria, but not part of the canonical form
+        String key = "chunk:" + criteria.getChunk()
+                + ":hybrid:" + criteria.getHybrid()
+                + ":" + CriteriaCanonicalizer.canonical( criteria );
+        try
+        {
+            return ( CompiledCriteria<T> ) plans.get( key, () -> compiled( criteria ) );
+        }
+        catch ( ExecutionException | UncheckedExecutionException e )
+        {
+            Throwables.throwIfUnchecked( e.getCause() );
+            throw new IllegalStateException( e.getCause() );
+        }
+    }
+
+    /**
+     * Compiles the criteria in to the single Objectify query if possible,
+     * otherwise its execution is delegated to this executor with parameter values bound.
+     */
+    private <T> CompiledCriteria<T> compiled( Criteria<T> criteria )
+    {
+        if ( DisjunctiveQuery.isDisjunctive( criteria )
+                || KeyLookup.isLookup( criteria )
+                || CriteriaPlanner.plan( criteria ).hasResidual() )
+        {
+            return new BoundCriteria<>( criteria, this );
+        }
+        return QueryPlan.compile( criteria );
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> listAsync( @Nonnull Criteria<T> criteria )
+    {
+        return async( () -> list( criteria ) );
+    }
+
+    @Override
+    public <T> CompletableFuture<T> firstAsync( @Nonnull Criteria<T> criteria )
+    {
+        return async( () -> first( criteria ) );
+    }
+
+    @Override
+    public <T> CompletableFuture<Integer> countAsync( @Nonnull Criteria<T> criteria )
+    {
+        return async( () -> count( criteria ) );
+    }
+
+    @Override
+    public <T> CompletableFuture<List<Long>> fetchIdsAsync( @Nonnull Criteria<T> criteria )
+    {
+        return async( () -> fetchIds( criteria ) );
+    }
+
+    @Override
+    public <T> CompletableFuture<List<String>> fetchNamesAsync( @Nonnull Criteria<T> criteria )
+    {
+        return async( () -> fetchNames( criteria ) );
+    }
+
+    @Override
+    public <T> String explain( @Nonnull Criteria<T> criteria )
+    {
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            return new KeyLookup<>( criteria, executor ).explain();
+        }
+        CriteriaPlanner.Plan<T> plan = CriteriaPlanner.plan( criteria );
+        String explain = plan.explain();
+        if ( !plan.hasResidual() && isCached( criteria ) )
+        {
+            explain += "\nResult cache: " + criteria.getEntityClass().getSimpleName() + " @QueryCache";
+        }
+        return explain;
+    }
+
+    /**
+     * Executes the given work within its own Objectify context at the async executor.
+     */
+    private <R> CompletableFuture<R> async( Work<R> work )
+    {
+        return CompletableFuture.supplyAsync( () -> ObjectifyService.run( work ), asyncExecutor );
+    }
+
+    private <T> int queryCount( Criteria<T> criteria )
+    {
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            return new DisjunctiveQuery<>( criteria, executor ).count();
+        }
+        return new ObjectifyCriteriaBuilder<T>().build( criteria ).count();
+    }
+
+    private <T> int queryCount( Criteria<T> criteria, int limit )
+    {
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            return new DisjunctiveQuery<>( criteria, limit, executor ).count();
+        }
+        // keys-only query stops at the limit
+        return new ObjectifyCriteriaBuilder<T>().build( criteria ).limit( limit ).count();
+    }
+
+    /**
+     * Loads entities by the cached keys. If any of the entities has been deleted meanwhile,
+     * the cached results of the kind are invalidated and the query is executed again.
+     */
+    private <T> List<T> cachedList( Criteria<T> criteria )
+    {
+        List<Key<T>> keys = cachedKeys( criteria );
+        Map<Key<T>, T> entities = ofy().load().keys( keys );
+
+        if ( entities.size() < keys.size() )
+        {
+            cache.invalidate( Key.getKind( criteria.getEntityClass() ) );
+            keys = cachedKeys( criteria );
+            entities = ofy().load().keys( keys );
+        }
+
+        List<T> list = new ArrayList<>( keys.size() );
+        for ( Key<T> key : keys )
+        {
+            T entity = entities.get( key );
+            if ( entity != null )
+            {
+                list.add( entity );
+            }
+        }
+        return list;
+    }
+
+    private <T> List<Key<T>> cachedKeys( Criteria<T> criteria )
+    {
+        String query = "keys:" + CriteriaCanonicalizer.canonical( criteria );
+        return cache.get( criteria.getEntityClass(), query, () -> ImmutableList.copyOf( queryKeys( criteria ) ) );
+    }
+
+    /**
+     * Returns the boolean indicating whether results of the given criteria are served from the query result cache.
+     */
+    private boolean isCached( Criteria<?> criteria )
+    {
+        return Strings.isNullOrEmpty( criteria.getCursor() ) && QueryResultCache.isCached( criteria.getEntityClass() );
+    }
+
+    /**
+     * Streams the datastore result of the pushed down criteria filtered by the residual filter,
+     * the offset and limit of the original criteria are applied in memory.
+     */
+    private <T> Stream<T> residual( Criteria<T> criteria, CriteriaPlanner.Plan<T> plan )
+    {
+        Stream<T> stream = stream( plan.getPushdown() ).filter( plan.getResidual() );
+        if ( criteria.getOffset() > 0 )
+        {
+            stream = stream.skip( criteria.getOffset() );
+        }
+        if ( criteria.getLimit() > 0 )
+        {
+            stream = stream.limit( criteria.getLimit() );
+        }
+        return stream;
+    }
+
+    private <T> Iterable<Key<T>> keys( Criteria<T> criteria )
+    {
+        if ( KeyLookup.isLookup( criteria ) )
+        {
+            return new KeyLookup<>( criteria, executor ).keys();
+        }
+        CriteriaPlanner.Plan<T> plan = CriteriaPlanner.plan( criteria );
+        if ( plan.hasResidual() )
+        {
+            return residual( criteria, plan ).map( Key::create ).collect( Collectors.toList() );
+        }
+        return isCached( criteria ) ? cachedKeys( criteria ) : queryKeys( criteria );
+    }
+
+    private <T> Iterable<Key<T>> queryKeys( Criteria<T> criteria )
+    {
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            return new DisjunctiveQuery<>( criteria, executor ).keys();
+        }
+        return new ObjectifyCriteriaBuilder<T>().build( criteria ).keys();
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Enables the query result cache for the annotated entity. The results (keys and counts)
+ * of the repeated criteria executed by {@link ObjectifyEntityExecutor} are served from the in-process cache
+ * until any entity of the same kind is saved or deleted via {@link BaseEntityIdentity#delete()},
+ * or expiration elapsed.
+ * <p>
+ * The cache is local to the instance, thus a change made by another instance is taken into account
+ * only once the entry has expired. Entities deleted other way are detected only
+ * by {@link ObjectifyEntityExecutor#list} (as a missing key), otherwise once the entry has expired.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+@Documented
+@Target( ElementType.TYPE )
+@Retention( RetentionPolicy.RUNTIME )
+public @interface QueryCache
+{
+    /**
+     * The number of seconds the cached query result is valid at most.
+     *
+     * @return the expiration in seconds
+     */
+    int expirationSeconds() default 60;
+}
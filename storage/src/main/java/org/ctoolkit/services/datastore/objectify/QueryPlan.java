@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+import org.ctoolkit.services.storage.CompiledCriteria;
+import org.ctoolkit.services.storage.criteria.BetweenExpression;
+import org.ctoolkit.services.storage.criteria.Bound;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.CriteriaBuilder;
+import org.ctoolkit.services.storage.criteria.Expression;
+import org.ctoolkit.services.storage.criteria.IdInExpression;
+import org.ctoolkit.services.storage.criteria.InExpression;
+import org.ctoolkit.services.storage.criteria.LikeExpression;
+import org.ctoolkit.services.storage.criteria.LogicalExpression;
+import org.ctoolkit.services.storage.criteria.NameInExpression;
+import org.ctoolkit.services.storage.criteria.NullExpression;
+import org.ctoolkit.services.storage.criteria.Order;
+import org.ctoolkit.services.storage.criteria.OrderRule;
+import org.ctoolkit.services.storage.criteria.Parameter;
+import org.ctoolkit.services.storage.criteria.PropertyExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceIdExpression;
+import org.ctoolkit.services.storage.criteria.ReferenceNameExpression;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+/**
+ * The Objectify implementation of the {@link CompiledCriteria}. The criteria is compiled once in to the list
+ * of the filter steps with the conditions and constant values already evaluated. The execution creates
+ * the Objectify query (bound to the current session) and applies the steps with parameter values bound.
+ * <p>
+ * The LIKE expression is applied by {@link ObjectifyCriteriaBuilder} at execution. The OR, IN and id in
+ * expression and cursor are not supported, see {@link BoundCriteria}.
+ *
+ * @param <E> the entity type
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+class QueryPlan<E>
+        implements CompiledCriteria<E>
+{
+    private final Class<E> entityClass;
+
+    private final Step<E> filter;
+
+    private final List<String> orders;
+
+    private final int offset;
+
+    private final int limit;
+
+    private final int chunk;
+
+    private final Boolean hybrid;
+
+    private QueryPlan( Criteria<E> criteria )
+    {
+        if ( DisjunctiveQuery.isDisjunctive( criteria ) )
+        {
+            throw new UnsupportedOperationException( "OR and IN expression is not supported by compiled query plan !" );
+        }
+
+        this.entityClass = criteria.getEntityClass();
+        this.filter = new Compiler<>( entityClass ).build( criteria );
+
+        ImmutableList.Builder<String> orders = ImmutableList.builder();
+        for ( OrderRule rule : criteria.getOrderRules() )
+        {
+            orders.add( rule.getOrder() == Order.DESC ? "-" + rule.getPropertyName() : rule.getPropertyName() );
+        }
+        this.orders = orders.build();
+
+        this.offset = criteria.getOffset();
+        this.limit = criteria.getLimit();
+        this.chunk = criteria.getChunk();
+        this.hybrid = criteria.getHybrid();
+    }
+
+    /**
+     * Compiles the given criteria. The criteria is not referenced by the plan,
+     * thus can be changed afterwards with no impact.
+     *
+     * @param criteria the criteria to be compiled
+     * @param <E>      the entity type
+     * @return the compiled criteria
+     */
+    static <E> QueryPlan<E> compile( @Nonnull Criteria<E> criteria )
+    {
+        return new QueryPlan<>( checkNotNull( criteria ) );
+    }
+
+    /**
+     * Creates the Objectify query with the given parameter values bound.
+     *
+     * @param parameters the parameter values mapped by its name
+     * @return the query ready to be executed
+     */
+    Query<E> query( @Nonnull Map<String, ?> parameters )
+    {
+        checkNotNull( parameters, "Parameters cannot be null" );
+
+        Query<E> query = filter.apply( ofy().load().type( entityClass ), parameters );
+
+        for ( String order : orders )
+        {
+            query = query.order( order );
+        }
+        if ( offset > 0 )
+        {
+            query = query.offset( offset );
+        }
+        if ( limit > 0 )
+        {
+            query = query.limit( limit );
+        }
+        if ( chunk > 0 )
+        {
+            query = query.chunk( chunk );
+        }
+        if ( hybrid != null )
+        {
+            query = query.hybrid( hybrid );
+        }
+        return query;
+    }
+
+    @Override
+    public List<E> list( @Nonnull Map<String, ?> parameters )
+    {
+        return query( parameters ).list();
+    }
+
+    @Override
+    public E first( @Nonnull Map<String, ?> parameters )
+    {
+        return query( parameters ).first().now();
+    }
+
+    @Override
+    public int count( @Nonnull Map<String, ?> parameters )
+    {
+        return query( parameters ).count();
+    }
+
+    @Override
+    public List<Long> fetchIds( @Nonnull Map<String, ?> parameters )
+    {
+        List<Long> ids = new ArrayList<>();
+        for ( Key<E> key : query( parameters ).keys() )
+        {
+            ids.add( key.getId() );
+        }
+        return ids;
+    }
+
+    @Override
+    public List<String> fetchNames( @Nonnull Map<String, ?> parameters )
+    {
+        List<String> names = new ArrayList<>();
+        for ( Key<E> key : query( parameters ).keys() )
+        {
+            names.add( key.getName() );
+        }
+        return names;
+    }
+
+    /**
+     * Returns the value bound to the parameter, or the value itself if it's not a parameter.
+     */
+    static Object bind( Object value, Map<String, ?> parameters )
+    {
+        if ( !( value instanceof Parameter ) )
+        {
+            return value;
+        }
+
+        String name = ( ( Parameter ) value ).getName();
+        if ( !parameters.containsKey( name ) )
+        {
+            throw new IllegalArgumentException( "Missing value of the criteria parameter '" + name + "'" );
+        }
+        return parameters.get( name );
+    }
+
+    /**
+     * The single compiled filter step.
+     */
+    private interface Step<E>
+    {
+        Query<E> apply( Query<E> query, Map<String, ?> parameters );
+    }
+
+    /**
+     * Compiles expressions in to the filter steps.
+     */
+    private static class Compiler<E>
+            implements CriteriaBuilder<Step<E>, E>
+    {
+        private final Class<E> entityClass;
+
+        Compiler( Class<E> entityClass )
+        {
+            this.entityClass = entityClass;
+        }
+
+        @Override
+        public Step<E> build( BetweenExpression expression )
+        {
+            String low = expression.getPropertyName() + ( expression.getLowBound() == Bound.SOFT ? " >=" : " >" );
+            String high = expression.getPropertyName() + ( expression.getHighBound() == Bound.SOFT ? " <=" : " <" );
+            Object lowValue = expression.getPropertyValue();
+            Object highValue = expression.getHighPropertyValue();
+
+            return ( query, parameters ) -> query
+                    .filter( low, bind( lowValue, parameters ) )
+                    .filter( high, bind( highValue, parameters ) );
+        }
+
+        @Override
+        public Step<E> build( InExpression expression )
+        {
+            // 'in' filter is not supported by Objectify on Cloud Datastore, executed as DisjunctiveQuery
+            throw new UnsupportedOperationException( "IN expression is not supported by compiled query plan !" );
+        }
+
+        @Override
+        public Step<E> build( IdInExpression expression )
+        {
+            // executed as KeyLookup
+            throw new UnsupportedOperationException( "Id in expression is not supported by compiled query plan !" );
+        }
+
+        @Override
+        public Step<E> build( NameInExpression expression )
+        {
+            throw new UnsupportedOperationException( "Id in expression is not supported by compiled query plan !" );
+        }
+
+        @Override
+        public Step<E> build( LikeExpression expression )
+        {
+            return ( query, parameters ) -> new ObjectifyCriteriaBuilder<E>().apply( query, entityClass, expression );
+        }
+
+        @Override
+        public Step<E> build( LogicalExpression expression )
+        {
+            List<Step<E>> steps = new ArrayList<>();
+            for ( Expression e : expression.getExpressions() )
+            {
+                steps.add( e.build( this ) );
+            }
+            return chain( steps );
+        }
+
+        @Override
+        public Step<E> build( NullExpression expression )
+        {
+            String condition = ObjectifyCriteriaBuilder.condition( expression );
+            return ( query, parameters ) -> query.filter( condition, null );
+        }
+
+        @Override
+        public Step<E> build( PropertyExpression expression )
+        {
+            throw new UnsupportedOperationException( "BigTable support only expressions: at the left hand side can only" +
+                    " be a property name or __key__, and the right hand side can only be a simple value." );
+        }
+
+        @Override
+        public Step<E> build( SimpleExpression expression )
+        {
+            String condition = ObjectifyCriteriaBuilder.condition( expression );
+            Object value = expression.getPropertyValue();
+
+            return ( query, parameters ) -> query.filter( condition, bind( value, parameters ) );
+        }
+
+        @Override
+        public Step<E> build( ReferenceIdExpression expression )
+        {
+            String condition = expression.getPropertyName() + " =";
+            Key<?> key = Key.create( expression.getRefClass(), expression.getPropertyValue() );
+
+            return ( query, parameters ) -> query.filter( condition, key );
+        }
+
+        @Override
+        public Step<E> build( ReferenceNameExpression expression )
+        {
+            String condition = expression.getPropertyName() + " =";
+            Key<?> key = Key.create( expression.getRefClass(), expression.getPropertyValue() );
+
+            return ( query, parameters ) -> query.filter( condition, key );
+        }
+
+        @Override
+        public Step<E> build( Criteria<E> criteria )
+        {
+            List<Step<E>> steps = new ArrayList<>();
+            for ( Expression expression : criteria.getExpressionList() )
+            {
+                steps.add( expression.build( this ) );
+            }
+            return chain( steps );
+        }
+
+        private Step<E> chain( List<Step<E>> steps )
+        {
+            List<Step<E>> chain = ImmutableList.copyOf( steps );
+            return ( query, parameters ) -> {
+                for ( Step<E> step : chain )
+                {
+                    query = step.apply( query, parameters );
+                }
+                return query;
+            };
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.googlecode.objectify.Key;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The in-process query result cache for entities annotated with {@link QueryCache}.
+ * Results are keyed by the kind and the canonical form of the query, see {@link CriteriaCanonicalizer}.
+ * <p>
+ * Each kind has its own generation, incremented by {@link #invalidate(String)}. An entry is valid only
+ * if it has been loaded within the current generation of its kind and has not expired yet.
+ * The generation is taken before the query is executed, thus a result loaded before the invalidation
+ * is never served once invalidated.
+ * <p>
+ * The kind is invalidated while the entity is being saved, before the write has been committed
+ * (Objectify has no post commit hook). Thus a result loaded within {@link #SETTLE_MILLIS} since the last
+ * invalidation of its kind is returned, but not cached, as it might not reflect the write yet.
+ * An entity deleted via {@link BaseEntityIdentity#delete()} invalidates the kind once the delete has been
+ * executed, other deletes are not detected, see {@link QueryCache}.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+final class QueryResultCache
+{
+    /**
+     * The maximum number of the cached query results, the least recently used are evicted first.
+     */
+    static final int MAXIMUM_SIZE = 1000;
+
+    /**
+     * The time in milliseconds since the invalidation of the kind, the write is expected to be committed within.
+     */
+    static final long SETTLE_MILLIS = 1000;
+
+    private static final QueryResultCache INSTANCE = new QueryResultCache( MAXIMUM_SIZE );
+
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Long> invalidations = new ConcurrentHashMap<>();
+
+    private final Cache<String, Entry> results;
+
+    QueryResultCache( int maximumSize )
+    {
+        results = CacheBuilder.newBuilder().maximumSize( maximumSize ).build();
+    }
+
+    /**
+     * Returns the application wide query result cache.
+     *
+     * @return the query result cache
+     */
+    static QueryResultCache instance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the boolean indicating whether query results of the given entity are being cached.
+     *
+     * @param entity the entity class
+     * @return true if the entity is annotated with {@link QueryCache}
+     */
+    static boolean isCached( Class<?> entity )
+    {
+        return entity.isAnnotationPresent( QueryCache.class );
+    }
+
+    /**
+     * Returns the cached query result, or loads and caches it if missing, stale or expired.
+     * If the entity is not annotated with {@link QueryCache} the result is always loaded.
+     * The result must be immutable.
+     *
+     * @param entity the entity class the query is executed for
+     * @param query  the canonical form of the query including the type of the result
+     * @param loader the query execution
+     * @param <V>    the type of the result
+     * @return the query result
+     */
+    @SuppressWarnings( "unchecked" )
+    <V> V get( Class<?> entity, String query, Supplier<V> loader )
+    {
+        QueryCache annotation = entity.getAnnotation( QueryCache.class );
+        if ( annotation == null )
+        {
+            return loader.get();
+        }
+
+        String kind = Key.getKind( entity );
+        String key = kind + "|" + query;
+        long generation = generation( kind ).get();
+        long now = System.nanoTime();
+
+        Entry entry = results.getIfPresent( key );
+        if ( entry != null && entry.generation == generation && entry.expiresAt - now > 0 )
+        {
+            return ( V ) entry.value;
+        }
+
+        V value = loader.get();
+
+        Long invalidated = invalidations.get( kind );
+        if ( invalidated != null && now - invalidated < TimeUnit.MILLISECONDS.toNanos( SETTLE_MILLIS ) )
+        {
+            // the write being invalidated might not have been committed yet
+            return value;
+        }
+
+        long expiresAt = now + TimeUnit.SECONDS.toNanos( annotation.expirationSeconds() );
+        results.put( key, new Entry( value, generation, expiresAt ) );
+
+        return value;
+    }
+
+    /**
+     * Invalidates all cached query results of the given entity, if annotated with {@link QueryCache}.
+     *
+     * @param entity the entity class that has changed
+     */
+    static void invalidate( Class<?> entity )
+    {
+        if ( isCached( entity ) )
+        {
+            INSTANCE.invalidate( Key.getKind( entity ) );
+        }
+    }
+
+    /**
+     * Invalidates all cached query results of the given kind.
+     *
+     * @param kind the datastore kind of the entity that has changed
+     */
+    void invalidate( String kind )
+    {
+        invalidations.put( kind, System.nanoTime() );
+        generation( kind ).incrementAndGet();
+    }
+
+    /**
+     * Removes all cached query results.
+     */
+    void clear()
+    {
+        results.invalidateAll();
+        invalidations.clear();
+    }
+
+    private AtomicLong generation( String kind )
+    {
+        return generations.computeIfAbsent( kind, k -> new AtomicLong() );
+    }
+
+    private static class Entry
+    {
+        private final Object value;
+
+        private final long generation;
+
+        private final long expiresAt;
+
+        Entry( Object value, long generation, long expiresAt )
+        {
+            this.value = value;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
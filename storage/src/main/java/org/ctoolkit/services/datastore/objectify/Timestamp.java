@@ -253,6 +253,7 @@ public abstract class Timestamp
     public void delete()
     {
         ofy().transact( () -> ofy().delete().entity( this ).now() );
+        QueryResultCache.invalidate( getClass() );
     }
 
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.storage;
+
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.Parameter;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The criteria compiled in to the reusable query plan. The values marked by {@link Parameter}
+ * are bound at execution, thus a hot repeated query pays only the parameter binding.
+ * The compiled criteria is immutable and thread safe.
+ *
+ * @param <T> the concrete type of the entity
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ * @see EntityExecutor#compile(Criteria)
+ */
+public interface CompiledCriteria<T>
+{
+    /**
+     * Executes the query with the given parameter values bound and retrieves a list of objects.
+     *
+     * @param parameters the parameter values mapped by its name
+     * @return list of objects that meets the criteria
+     * @throws IllegalArgumentException if any parameter value is missing
+     */
+    List<T> list( @Nonnull Map<String, ?> parameters );
+
+    /**
+     * Executes the query with the given parameter values bound and retrieves the first entity if any.
+     *
+     * @param parameters the parameter values mapped by its name
+     * @return the first entity in the result list or <code>null</code>
+     * @throws IllegalArgumentException if any parameter value is missing
+     */
+    T first( @Nonnull Map<String, ?> parameters );
+
+    /**
+     * Counts the total number of values in the result, see {@link EntityExecutor#count(Criteria)}.
+     *
+     * @param parameters the parameter values mapped by its name
+     * @return the total number of values in the result
+     * @throws IllegalArgumentException if any parameter value is missing
+     */
+    int count( @Nonnull Map<String, ?> parameters );
+
+    /**
+     * Executes a keys-only query and get the result as a list of entity IDs.
+     *
+     * @param parameters the parameter values mapped by its name
+     * @return the list of long IDs (entity identification)
+     * @throws IllegalArgumentException if any parameter value is missing
+     */
+    List<Long> fetchIds( @Nonnull Map<String, ?> parameters );
+
+    /**
+     * Executes a keys-only query and get the result as a list of entity names.
+     *
+     * @param parameters the parameter values mapped by its name
+     * @return the list of string names (entity identification)
+     * @throws IllegalArgumentException if any parameter value is missing
+     */
+    List<String> fetchNames( @Nonnull Map<String, ?> parameters );
+}
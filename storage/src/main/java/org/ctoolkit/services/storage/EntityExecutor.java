@@ -21,7 +21,12 @@ package org.ctoolkit.services.storage;
 import org.ctoolkit.services.storage.criteria.Criteria;
 
 import javax.annotation.Nonnull;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * The entity executor.
@@ -49,6 +54,41 @@ public interface EntityExecutor
      */
     <T> T first( @Nonnull Criteria<T> criteria );
 
+    /**
+     * Executes a query based on the given criteria and retrieves a single page of the result,
+     * starting at the criteria cursor if any. The cost of the query is constant regardless of the page position.
+     *
+     * @param criteria a criteria holder {@link Criteria}, the limit is the page size
+     * @param <T>      the concrete type of the entity
+     * @return the page of entities along with the cursor to continue with
+     * @throws IllegalArgumentException if criteria has no limit or the cursor is invalid
+     */
+    <T> Page<T> page( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Executes a query based on the given criteria and retrieves the lazily fetched iterator of the result.
+     * Results are fetched from the datastore in chunks while iterating (see {@link Criteria#chunk(int)}),
+     * thus the first result is available before the whole query completes and memory stays bounded.
+     * <p>
+     * Note: the loaded entities are still held by the session cache (if any), clear it periodically
+     * while processing huge result sets.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the concrete type of the entity
+     * @return the lazily fetched iterator of the entities that meet the criteria
+     */
+    <T> Iterator<T> iterate( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Executes a query based on the given criteria and retrieves the lazily fetched sequential stream
+     * of the result, see {@link #iterate(Criteria)}.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the concrete type of the entity
+     * @return the lazily fetched stream of the entities that meet the criteria
+     */
+    <T> Stream<T> stream( @Nonnull Criteria<T> criteria );
+
     /**
      * Count the total number of values in the result.  <em>limit</em> and <em>offset</em> are obeyed.
      * This is somewhat faster than fetching, but the time still grows with the number of results.
@@ -64,6 +104,34 @@ public interface EntityExecutor
      */
     <T> int count( @Nonnull Criteria<T> criteria );
 
+    /**
+     * Count the number of values in the result up to the given maximum, suitable for UI badges ("99+").
+     * The count stops at <em>max</em>, thus the time does not grow with the total number of results beyond it.
+     * <em>offset</em> is obeyed, while <em>limit</em> is applied only if lower than <em>max</em>.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param max      the maximum number to be counted, must be greater than zero
+     * @param <T>      the type of the entity to be counted
+     * @return the number of values in the result, at most <em>max</em>
+     */
+    <T> int count( @Nonnull Criteria<T> criteria, int max );
+
+    /**
+     * Executes a projection query based on the given criteria and retrieves only the projected properties
+     * (see {@link Criteria#project(String, String...)}) as a list of maps, the property name to its value,
+     * in the order of the projection. The projection query is cheaper than fetching the full entities,
+     * and the payload is smaller. If {@link Criteria#isDistinct()} only the unique combinations are retrieved.
+     * <p>
+     * Only the indexed properties can be projected and a property used in the equality filter can not be projected.
+     * The multi-valued property yields one result per value.
+     *
+     * @param criteria a criteria holder {@link Criteria} with projection
+     * @param <T>      the type of the entity to be queried
+     * @return the list of the projected property values
+     * @throws IllegalArgumentException if criteria has no projection
+     */
+    <T> List<Map<String, Object>> project( @Nonnull Criteria<T> criteria );
+
     /**
      * Executes a keys-only query based on given criteria and get the result as a list of entity names.
      * This is more efficient than fetching the actual full result set.
@@ -83,4 +151,105 @@ public interface EntityExecutor
      * @return the list of string names (entity identification)
      */
     <T> List<String> fetchNames( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Executes a keys-only query based on given criteria and retrieves the lazily fetched stream of the entity IDs.
+     * Unlike {@link #fetchIds(Criteria)} the IDs are neither boxed nor collected in to the list,
+     * use {@link LongStream#toArray()} to get the primitive array.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the type of the entity to be queried
+     * @return the lazily fetched stream of the long IDs
+     */
+    <T> LongStream streamIds( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Executes a keys-only query based on given criteria and retrieves the lazily fetched stream
+     * of the entity ID chunks, each with the cursor checkpoint to resume the scan from.
+     * The size of the chunk is taken from {@link Criteria#getChunk()}, if not set the default size 1000 applies.
+     * Suitable to scan huge kinds, for example to fan out the work across tasks.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the type of the entity to be queried
+     * @return the lazily fetched stream of the ID chunks
+     * @throws UnsupportedOperationException if the criteria has OR expression (cursor is not supported)
+     */
+    <T> Stream<IdChunk> streamIdChunks( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Compiles the given criteria in to the reusable query plan. The values marked by
+     * {@link org.ctoolkit.services.storage.criteria.Parameter} are bound at execution.
+     * The criteria with the same expressions, order rules, offset, limit, chunk and hybrid hint share the same
+     * compiled instance, thus it's cheap to call it repeatedly. The later changes of the criteria do not affect
+     * the compiled one.
+     * The criteria that can not be executed as a single query (for example OR or IN expression) is executed
+     * the same way as by this executor, with the parameter values bound at execution.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the concrete type of the entity
+     * @return the compiled criteria
+     * @throws IllegalArgumentException if the criteria has cursor or projection set
+     */
+    <T> CompiledCriteria<T> compile( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Asynchronously executes a query based on the given criteria, see {@link #list(Criteria)}.
+     * Independent queries started this way are executed concurrently, thus the caller waits only once.
+     * <p>
+     * The query runs outside of the caller's session, the returned entities are not in its session cache.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the concrete type of the entity
+     * @return the future list of objects that meets the criteria
+     */
+    <T> CompletableFuture<List<T>> listAsync( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Asynchronously retrieves the first entity in the result list, see {@link #first(Criteria)}
+     * and {@link #listAsync(Criteria)}.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the concrete type of the entity
+     * @return the future first entity in the result list, completed with <code>null</code> if none
+     */
+    <T> CompletableFuture<T> firstAsync( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Asynchronously counts the total number of values in the result, see {@link #count(Criteria)}
+     * and {@link #listAsync(Criteria)}.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the type of the entity to be counted
+     * @return the future total number of values in the result
+     */
+    <T> CompletableFuture<Integer> countAsync( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Asynchronously executes a keys-only query, see {@link #fetchIds(Criteria)} and {@link #listAsync(Criteria)}.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the type of the entity to be queried
+     * @return the future list of long IDs (entity identification)
+     */
+    <T> CompletableFuture<List<Long>> fetchIdsAsync( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Asynchronously executes a keys-only query, see {@link #fetchNames(Criteria)} and {@link #listAsync(Criteria)}.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the type of the entity to be queried
+     * @return the future list of string names (entity identification)
+     */
+    <T> CompletableFuture<List<String>> fetchNamesAsync( @Nonnull Criteria<T> criteria );
+
+    /**
+     * Returns the human readable execution plan of the given criteria, without executing it.
+     * Describes the filters and order served by the datastore index, the residual filters evaluated in memory
+     * against the streamed result and where the offset and limit are applied.
+     *
+     * @param criteria a criteria holder {@link Criteria}
+     * @param <T>      the concrete type of the entity
+     * @return the execution plan description
+     */
+    <T> String explain( @Nonnull Criteria<T> criteria );
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.storage;
+
+import org.ctoolkit.services.storage.criteria.Criteria;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The chunk of the entity IDs taken by the keys-only scan, along with the cursor checkpoint.
+ * To resume the scan after this chunk, set the cursor to the same criteria, see {@link Criteria#cursor(String)}.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ * @see EntityExecutor#streamIdChunks(Criteria)
+ */
+public class IdChunk
+{
+    private final long[] ids;
+
+    private final String cursor;
+
+    public IdChunk( @Nonnull long[] ids, @Nullable String cursor )
+    {
+        this.ids = checkNotNull( ids );
+        this.cursor = cursor;
+    }
+
+    /**
+     * Returns the entity IDs of this chunk. The array is not copied, do not modify it.
+     *
+     * @return the entity IDs
+     */
+    public long[] getIds()
+    {
+        return ids;
+    }
+
+    /**
+     * Returns the web safe cursor pointing right after the last ID of this chunk.
+     *
+     * @return the cursor to resume the scan with
+     */
+    public String getCursor()
+    {
+        return cursor;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.storage;
+
+import org.ctoolkit.services.storage.criteria.Criteria;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The single page of the query result along with the cursor to continue with.
+ * To get the next page, set the cursor to the same criteria, see {@link Criteria#cursor(String)}.
+ *
+ * @param <T> the concrete type of the entity
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class Page<T>
+{
+    private final List<T> items;
+
+    private final String cursor;
+
+    public Page( @Nonnull List<T> items, @Nullable String cursor )
+    {
+        this.items = Collections.unmodifiableList( checkNotNull( items ) );
+        this.cursor = cursor;
+    }
+
+    /**
+     * Returns the entities of this page.
+     *
+     * @return the list of entities
+     */
+    public List<T> getItems()
+    {
+        return items;
+    }
+
+    /**
+     * Returns the web safe cursor pointing right after the last entity of this page.
+     *
+     * @return the cursor to continue with or <code>null</code> if there are no more results
+     */
+    public String getCursor()
+    {
+        return cursor;
+    }
+
+    /**
+     * Returns true if there might be more results after this page.
+     * The next page might be empty, if the results ended exactly at the page boundary.
+     *
+     * @return true if there is a cursor to continue with
+     */
+    public boolean hasNext()
+    {
+        return cursor != null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Page{" +
+                "items=" + items.size() +
+                ", cursor='" + cursor + '\'' +
+                '}';
+    }
+}
@@ -103,5 +103,6 @@ public abstract class PropertiesHashCode
     public void delete()
     {
         ofy().transact( () -> ofy().delete().entity( this ).now() );
+        onDelete();
     }
 }
@@ -22,6 +22,7 @@ import org.ctoolkit.services.storage.EntityIdentity;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -44,6 +45,16 @@ public class Criteria<T>
 
     private int offset = -1;
 
+    private String cursor;
+
+    private int chunk = -1;
+
+    private Boolean hybrid;
+
+    private List<String> projections = new ArrayList<>();
+
+    private boolean distinct;
+
     private Class<T> entity;
 
     private List<Expression> expressionList = new ArrayList<>();
@@ -534,6 +545,9 @@ public class Criteria<T>
 
     /**
      * Sets the position of the first result to retrieve.
+     * <p>
+     * Note: the skipped results are still being read (and billed) by the datastore,
+     * thus prefer {@link #cursor(String)} for pagination.
      *
      * @param offset first result of query
      * @return this criteria instance
@@ -544,6 +558,131 @@ public class Criteria<T>
         return this;
     }
 
+    /**
+     * Returns the web safe cursor the results will start at.
+     *
+     * @return the start cursor or <code>null</code> if not set
+     */
+    public String getCursor()
+    {
+        return cursor;
+    }
+
+    /**
+     * Sets the web safe cursor the results will start at, taken from the previous page.
+     * Unlike {@link #offset(int)} the cost of the query does not depend on the cursor position.
+     * The cursor is valid only for the same criteria (filters and order) it has been taken from.
+     * The offset is ignored while the cursor is set, as the cursor already includes it.
+     *
+     * @param cursor the start cursor, <code>null</code> to start from the beginning
+     * @return this criteria instance
+     * @see org.ctoolkit.services.storage.EntityExecutor#page(Criteria)
+     */
+    public Criteria<T> cursor( String cursor )
+    {
+        this.cursor = cursor;
+        return this;
+    }
+
+    /**
+     * Returns the number of results fetched from the datastore in a single batch while iterating.
+     *
+     * @return the chunk size, -1 if not set (datastore default)
+     */
+    public int getChunk()
+    {
+        return chunk;
+    }
+
+    /**
+     * Sets the number of results fetched from the datastore in a single batch while iterating.
+     * Bigger chunk means less round trips, but more memory held at once.
+     *
+     * @param chunk the chunk size
+     * @return this criteria instance
+     * @see org.ctoolkit.services.storage.EntityExecutor#iterate(Criteria)
+     */
+    public Criteria<T> chunk( int chunk )
+    {
+        this.chunk = chunk;
+        return this;
+    }
+
+    /**
+     * Returns the execution strategy hint, whether to run the query as keys-only followed by batch load by keys.
+     *
+     * @return the hybrid hint, <code>null</code> if not set (decided by the entity, see {@link #hybrid(boolean)})
+     */
+    public Boolean getHybrid()
+    {
+        return hybrid;
+    }
+
+    /**
+     * Sets the execution strategy hint. If <code>true</code> the query is executed as keys-only
+     * and the entities are then batch loaded by keys, served from the session and global (memcache) cache
+     * if already there. Suitable for read-heavy cached entities. If <code>false</code> the entities
+     * are always read directly by the query from the datastore, saving a round trip for rarely read entities.
+     * <p>
+     * If not set, the hybrid execution is used for entities with global cache enabled (Objectify's {@code @Cache}).
+     *
+     * @param hybrid true to execute as keys-only query followed by batch load
+     * @return this criteria instance
+     */
+    public Criteria<T> hybrid( boolean hybrid )
+    {
+        this.hybrid = hybrid;
+        return this;
+    }
+
+    /**
+     * Adds the properties to be retrieved by the projection query, see
+     * {@link org.ctoolkit.services.storage.EntityExecutor#project(Criteria)}.
+     * Only the indexed properties can be projected.
+     *
+     * @param property       the name of the property to be retrieved
+     * @param moreProperties the optional names of more properties to be retrieved
+     * @return this criteria instance
+     */
+    public Criteria<T> project( @Nonnull String property, String... moreProperties )
+    {
+        projections.add( checkNotNull( property ) );
+        projections.addAll( Arrays.asList( moreProperties ) );
+        return this;
+    }
+
+    /**
+     * Returns the list of the properties to be retrieved by the projection query.
+     *
+     * @return the list of the projected properties, empty if none
+     */
+    public List<String> getProjections()
+    {
+        return projections;
+    }
+
+    /**
+     * Sets whether the projection query returns only the unique combinations of the projected property values.
+     *
+     * @param distinct true to return only distinct results
+     * @return this criteria instance
+     */
+    public Criteria<T> distinct( boolean distinct )
+    {
+        this.distinct = distinct;
+        return this;
+    }
+
+    /**
+     * Returns the boolean indicating whether the projection query returns only distinct results.
+     *
+     * @return true if only distinct results
+     */
+    public boolean isDistinct()
+    {
+        return distinct;
+    }
+
     /**
      * <p>Add order rule for query. Order rule will be applied as follows:</p>
      * <p><code>order by e.propertyName asc[desc]</code></p>
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.storage.criteria;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The named placeholder of the expression value, bound at execution of the compiled criteria.
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * CompiledCriteria&#60;Entity&#62; compiled = executor.compile( Criteria.of( Entity.class )
+ *         .equal( "status", Parameter.of( "status" ) ) );
+ *
+ * compiled.list( ImmutableMap.of( "status", "ACTIVE" ) );
+ * </pre>
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ * @see org.ctoolkit.services.storage.EntityExecutor#compile(Criteria)
+ */
+public final class Parameter
+{
+    private final String name;
+
+    private Parameter( @Nonnull String name )
+    {
+        this.name = checkNotNull( name );
+    }
+
+    /**
+     * Creates the placeholder with the given name.
+     *
+     * @param name the parameter name
+     * @return the new parameter
+     */
+    public static Parameter of( @Nonnull String name )
+    {
+        return new Parameter( name );
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o ) return true;
+        if ( !( o instanceof Parameter ) ) return false;
+        return name.equals( ( ( Parameter ) o ).name );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+import org.testng.annotations.Test;
+
+import java.util.Date;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.ctoolkit.services.datastore.objectify.CriteriaCanonicalizer.canonical;
+
+/**
+ * {@link CriteriaCanonicalizer} unit testing.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class CriteriaCanonicalizerTest
+{
+    @Test
+    public void sameCriteriaSameForm()
+    {
+        Criteria<QueryEntity> first = Criteria.of( QueryEntity.class )
+                .equal( "category", "even" )
+                .ge( "created", new Date( 1000L ) )
+                .descending( "score" )
+                .offset( 5 )
+                .limit( 10 );
+
+        Criteria<QueryEntity> second = Criteria.of( QueryEntity.class )
+                .equal( "category", "even" )
+                .ge( "created", new Date( 1000L ) )
+                .descending( "score" )
+                .offset( 5 )
+                .limit( 10 )
+                .chunk( 50 )
+                .cursor( "ignored" );
+
+        assertThat( canonical( first ) ).isEqualTo( canonical( second ) );
+        assertThat( canonical( first ) ).isEqualTo( QueryEntity.class.getName()
+                + " where category = String:4:even and created >= Date:1000"
+                + " order by score DESC offset 5 limit 10" );
+    }
+
+    @Test
+    public void differentValueTypeDifferentForm()
+    {
+        String stringValue = canonical( Criteria.of( QueryEntity.class ).equal( "score", "1" ) );
+        String longValue = canonical( Criteria.of( QueryEntity.class ).equal( "score", 1L ) );
+
+        assertThat( stringValue ).isNotEqualTo( longValue );
+    }
+
+    @Test
+    public void delimiterInValueDifferentForm()
+    {
+        String single = canonical( Criteria.of( QueryEntity.class ).in( "name", new Object[]{"a, String:b"} ) );
+        String multiple = canonical( Criteria.of( QueryEntity.class ).in( "name", new Object[]{"a", "b"} ) );
+
+        assertThat( single ).isNotEqualTo( multiple );
+        assertThat( single ).endsWith( "[String:11:a, String:b]" );
+    }
+
+    @Test
+    public void disjunction()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .or( new SimpleExpression( "score", 1, "=" ), new SimpleExpression( "name", "a", "=" ) );
+
+        assertThat( canonical( criteria ) ).endsWith( "where (score = Integer:1:1 or name = String:1:a)" );
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import org.ctoolkit.services.storage.criteria.Bound;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.MatchMode;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+import org.testng.annotations.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * {@link CriteriaPlanner} unit testing.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class CriteriaPlannerTest
+{
+    @Test
+    public void allPushedDown()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .equal( "category", "even" )
+                .ge( "score", 3 )
+                .ascending( "score" )
+                .limit( 5 );
+
+        CriteriaPlanner.Plan<QueryEntity> plan = CriteriaPlanner.plan( criteria );
+
+        assertThat( plan.hasResidual() ).isFalse();
+        assertThat( plan.getResidual() ).isNull();
+        assertThat( plan.getPushdown() ).isSameInstanceAs( criteria );
+        assertThat( plan.explain() ).contains( "Residual filters (in memory): none" );
+        assertThat( plan.explain() ).contains( "limit 5 (datastore)" );
+    }
+
+    @Test
+    public void rangePreferredAsInequality()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .lt( "name", "name-5" )
+                .gt( "score", 2 )
+                .le( "score", 10 )
+                .notEqual( "category", "odd" )
+                .limit( 2 );
+
+        CriteriaPlanner.Plan<QueryEntity> plan = CriteriaPlanner.plan( criteria );
+
+        assertThat( plan.hasResidual() ).isTrue();
+        assertThat( plan.getPushdown().getExpressionList() ).hasSize( 2 );
+        assertThat( plan.getPushdown().getLimit() ).isEqualTo( -1 );
+        assertThat( plan.explain() ).contains( "Inequality property: score" );
+        assertThat( plan.explain() ).contains( "Residual filters (in memory): name < String:6:name-5"
+                + " and category <> String:3:odd" );
+        assertThat( plan.explain() ).contains( "limit 2 (in memory)" );
+
+        assertThat( plan.getResidual().test( new QueryEntity( 4, "name-4", "even", 4 ) ) ).isTrue();
+        assertThat( plan.getResidual().test( new QueryEntity( 7, "name-7", "even", 7 ) ) ).isFalse();
+        assertThat( plan.getResidual().test( new QueryEntity( 3, "name-3", "odd", 3 ) ) ).isFalse();
+    }
+
+    @Test
+    public void firstOrderRuleDecidesInequality()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .between( "score", 2, 10, Bound.SOFT, Bound.SOFT )
+                .ge( "name", "name-3" )
+                .descending( "name" );
+
+        CriteriaPlanner.Plan<QueryEntity> plan = CriteriaPlanner.plan( criteria );
+
+        assertThat( plan.explain() ).contains( "Inequality property: name" );
+        assertThat( plan.explain() ).contains( "Datastore order: name DESC" );
+        assertThat( plan.getPushdown().getOrderRules() ).hasSize( 1 );
+        assertThat( plan.getResidual().test( new QueryEntity( 11, "name-4", "odd", 11 ) ) ).isFalse();
+    }
+
+    @Test
+    public void unsupportedExpressionsResidual()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .equal( "category", "even" )
+                .neProperty( "name", "category" )
+                .notLike( "name", "name-1", MatchMode.START )
+                .like( "name", "-5", MatchMode.END )
+                .isNotNull( "score" );
+
+        CriteriaPlanner.Plan<QueryEntity> plan = CriteriaPlanner.plan( criteria );
+
+        assertThat( plan.getPushdown().getExpressionList() ).hasSize( 1 );
+        assertThat( plan.explain() ).contains( "Datastore filters: category = String:4:even" );
+        assertThat( plan.getResidual().test( new QueryEntity( 5, "name-5", "even", 6 ) ) ).isTrue();
+        assertThat( plan.getResidual().test( new QueryEntity( 15, "name-15", "even", 16 ) ) ).isFalse();
+    }
+
+    @Test
+    public void disjunctionPushedDownWithSingleInequality()
+    {
+        Criteria<QueryEntity> equalities = Criteria.of( QueryEntity.class )
+                .or( new SimpleExpression( "score", 1, "=" ), new SimpleExpression( "score", 2, "=" ) );
+
+        assertThat( CriteriaPlanner.plan( equalities ).hasResidual() ).isFalse();
+        assertThat( CriteriaPlanner.plan( equalities ).explain() ).contains( "Sub-queries (OR, IN): 2" );
+
+        Criteria<QueryEntity> in = Criteria.of( QueryEntity.class ).in( "score", new Object[]{1, 2, 3, 2} );
+        assertThat( CriteriaPlanner.plan( in ).explain() ).contains( "Sub-queries (OR, IN): 3" );
+
+        Criteria<QueryEntity> inequality = Criteria.of( QueryEntity.class )
+                .equal( "category", "odd" )
+                .or( new SimpleExpression( "score", 1, "<" ), new SimpleExpression( "score", 20, ">" ) );
+
+        assertThat( CriteriaPlanner.plan( inequality ).hasResidual() ).isFalse();
+        assertThat( CriteriaPlanner.plan( inequality ).explain() ).contains( "Inequality property: score" );
+
+        Criteria<QueryEntity> inequalities = Criteria.of( QueryEntity.class )
+                .equal( "category", "odd" )
+                .or( new SimpleExpression( "score", 1, "<" ), new SimpleExpression( "name", "name-3", ">" ) );
+
+        CriteriaPlanner.Plan<QueryEntity> plan = CriteriaPlanner.plan( inequalities );
+        assertThat( plan.hasResidual() ).isTrue();
+        assertThat( plan.explain() ).doesNotContain( "Sub-queries" );
+        assertThat( plan.getResidual().test( new QueryEntity( 5, "name-5", "odd", 5 ) ) ).isTrue();
+        assertThat( plan.getResidual().test( new QueryEntity( 15, "name-15", "odd", 15 ) ) ).isFalse();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.MatchMode;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * {@link InMemoryCriteriaBuilder} unit testing.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class InMemoryCriteriaBuilderTest
+{
+    private List<QueryEntity> entities;
+
+    @BeforeMethod
+    public void before()
+    {
+        entities = new ArrayList<>();
+        for ( int index = 1; index <= 12; index++ )
+        {
+            entities.add( new QueryEntity( index, "Name-" + index, index % 2 == 0 ? "even" : "odd", index ) );
+        }
+    }
+
+    @Test
+    public void filterOrderAndWindow()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .equal( "category", "even" )
+                .ge( "score", 4L )
+                .descending( "score" )
+                .offset( 1 )
+                .limit( 2 );
+
+        assertThat( ids( InMemoryCriteriaBuilder.filter( criteria, entities ) ) ).containsExactly( 10L, 8L ).inOrder();
+    }
+
+    @Test
+    public void disjunctionAndLike()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .or( new SimpleExpression( "score", 1, "=" ), new SimpleExpression( "score", 12, "=" ) )
+                .ascending( "score" );
+
+        assertThat( ids( InMemoryCriteriaBuilder.filter( criteria, entities ) ) ).containsExactly( 1L, 12L ).inOrder();
+
+        Criteria<QueryEntity> like = Criteria.of( QueryEntity.class )
+                .ilike( "name", "E-1", MatchMode.ANYWHERE )
+                .like( "name", "1", MatchMode.END );
+
+        assertThat( ids( InMemoryCriteriaBuilder.filter( like, entities ) ) ).containsExactly( 1L, 11L );
+
+        Criteria<QueryEntity> notLike = Criteria.of( QueryEntity.class ).notLike( "name", "Name-1", MatchMode.START );
+        assertThat( InMemoryCriteriaBuilder.filter( notLike, entities ) ).hasSize( 8 );
+    }
+
+    @Test
+    public void datastoreSemantics()
+    {
+        // different type never matches
+        Criteria<QueryEntity> string = Criteria.of( QueryEntity.class ).equal( "score", "1" );
+        assertThat( InMemoryCriteriaBuilder.filter( string, entities ) ).isEmpty();
+
+        Criteria<QueryEntity> nulls = Criteria.of( QueryEntity.class ).lt( "score", 3 );
+        entities.add( new QueryEntity( 13, "Name-13", "odd", null ) );
+        assertThat( ids( InMemoryCriteriaBuilder.filter( nulls, entities ) ) ).containsExactly( 1L, 2L );
+
+        Criteria<QueryEntity> isNull = Criteria.of( QueryEntity.class ).isNull( "score" );
+        assertThat( ids( InMemoryCriteriaBuilder.filter( isNull, entities ) ) ).containsExactly( 13L );
+    }
+
+    @Test
+    public void mixedNumberTypes()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).ge( "score", 10.5 );
+        assertThat( ids( InMemoryCriteriaBuilder.filter( criteria, entities ) ) ).containsExactly( 11L, 12L );
+
+        assertThat( EntityProperties.VALUE_ORDER.compare( 3, 2.5 ) ).isGreaterThan( 0 );
+        assertThat( EntityProperties.VALUE_ORDER.compare( 1.5f, 2.0 ) ).isLessThan( 0 );
+        assertThat( EntityProperties.VALUE_ORDER.compare( 2L, 2.0 ) ).isEqualTo( 0 );
+    }
+
+    @Test
+    public void propertyComparison()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).gtProperty( "category", "name" );
+        assertThat( InMemoryCriteriaBuilder.filter( criteria, entities ) ).hasSize( 12 );
+    }
+
+    @Test
+    public void idIn()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).idIn( "id", new Long[]{3L, 5L, 99L} );
+        assertThat( ids( InMemoryCriteriaBuilder.filter( criteria, entities ) ) ).containsExactly( 3L, 5L );
+    }
+
+    private static List<Long> ids( List<QueryEntity> entities )
+    {
+        return entities.stream().map( QueryEntity::getId ).collect( Collectors.toList() );
+    }
+}
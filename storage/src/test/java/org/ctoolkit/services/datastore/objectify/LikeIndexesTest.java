@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * {@link LikeIndexes} unit testing.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class LikeIndexesTest
+{
+    @Test
+    public void trigrams()
+    {
+        assertThat( LikeIndexes.trigrams( "banana" ) ).containsExactly( "ana", "ban", "nan" ).inOrder();
+        assertThat( LikeIndexes.trigrams( "ab" ) ).containsExactly( "ab" );
+        assertThat( LikeIndexes.trigrams( "" ) ).isEmpty();
+    }
+
+    @Test
+    public void derive()
+    {
+        Map<String, Object> derived = LikeIndexes.derive( new QueryEntity( 1, "Name-Xy", "even", 1 ) );
+
+        assertThat( derived ).containsEntry( "name_lower", "name-xy" );
+        assertThat( derived ).containsEntry( "name_rev", "yx-eman" );
+        assertThat( derived ).containsKey( "name_tri" );
+        assertThat( derived ).containsEntry( "category_rev", "neve" );
+        assertThat( derived ).doesNotContainKey( "category_lower" );
+        assertThat( derived ).doesNotContainKey( "category_tri" );
+    }
+
+    @Test
+    public void noAnnotatedField()
+    {
+        assertThat( LikeIndexes.derive( new Object() ) ).isNull();
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.googlecode.objectify.ObjectifyService;
+import org.ctoolkit.services.datastore.BackendServiceTestCase;
+import org.ctoolkit.services.storage.CompiledCriteria;
+import org.ctoolkit.services.storage.EntityExecutor;
+import org.ctoolkit.services.storage.IdChunk;
+import org.ctoolkit.services.storage.Page;
+import org.ctoolkit.services.storage.criteria.Criteria;
+import org.ctoolkit.services.storage.criteria.MatchMode;
+import org.ctoolkit.services.storage.criteria.Parameter;
+import org.ctoolkit.services.storage.criteria.SimpleExpression;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+/**
+ * {@link ObjectifyEntityExecutor} testing against the local datastore emulator.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+public class ObjectifyEntityExecutorDbTest
+        extends BackendServiceTestCase
+{
+    private static final int ENTITIES = 25;
+
+    private EntityExecutor executor = new ObjectifyEntityExecutor();
+
+    @BeforeMethod
+    public void before()
+    {
+        ObjectifyService.register( QueryEntity.class );
+        ObjectifyService.register( CachedQueryEntity.class );
+        QueryResultCache.instance().clear();
+
+        List<QueryEntity> entities = new ArrayList<>();
+        for ( int index = 1; index <= ENTITIES; index++ )
+        {
+            entities.add( new QueryEntity( index, "name-" + index, index % 2 == 0 ? "even" : "odd", index ) );
+        }
+        ofy().save().entities( entities ).now();
+    }
+
+    @Test
+    public void pageByCursor()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).ascending( "score" ).limit( 10 );
+
+        List<Integer> scores = new ArrayList<>();
+        int pages = 0;
+        Page<QueryEntity> page;
+
+        do
+        {
+            page = executor.page( criteria );
+            page.getItems().forEach( entity -> scores.add( entity.getScore() ) );
+            criteria.cursor( page.getCursor() );
+            pages++;
+        }
+        while ( page.hasNext() );
+
+        assertThat( pages ).isEqualTo( 3 );
+        assertThat( scores ).hasSize( ENTITIES );
+        assertThat( scores ).isInOrder();
+    }
+
+    @Test
+    public void iterateInChunks()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .equal( "category", "even" )
+                .chunk( 5 );
+
+        Iterator<QueryEntity> iterator = executor.iterate( criteria );
+        int count = 0;
+        while ( iterator.hasNext() )
+        {
+            assertThat( iterator.next().getCategory() ).isEqualTo( "even" );
+            count++;
+        }
+
+        assertThat( count ).isEqualTo( ENTITIES / 2 );
+    }
+
+    @Test
+    public void streamLazily()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).descending( "score" ).chunk( 3 );
+
+        List<Integer> scores = executor.stream( criteria )
+                .limit( 4 )
+                .map( QueryEntity::getScore )
+                .collect( Collectors.toList() );
+
+        assertThat( scores ).containsExactly( 25, 24, 23, 22 ).inOrder();
+    }
+
+    @Test
+    public void hybridSameAsFullQuery()
+    {
+        Criteria<QueryEntity> full = Criteria.of( QueryEntity.class )
+                .equal( "category", "odd" )
+                .descending( "score" )
+                .limit( 6 )
+                .hybrid( false );
+
+        Criteria<QueryEntity> hybrid = Criteria.of( QueryEntity.class )
+                .equal( "category", "odd" )
+                .descending( "score" )
+                .limit( 6 )
+                .hybrid( true );
+
+        List<Long> expected = executor.list( full ).stream().map( QueryEntity::getId ).collect( Collectors.toList() );
+        assertThat( expected ).containsExactly( 25L, 23L, 21L, 19L, 17L, 15L ).inOrder();
+
+        ofy().clear();
+        List<Long> actual = executor.list( hybrid ).stream().map( QueryEntity::getId ).collect( Collectors.toList() );
+        assertThat( actual ).isEqualTo( expected );
+    }
+
+    @Test
+    public void listDisjunctiveOrdered()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .or( new SimpleExpression( "category", "even", "=" ),
+                        new SimpleExpression( "score", 3, "<=" ) )
+                .descending( "score" )
+                .offset( 1 )
+                .limit( 5 );
+
+        List<Integer> scores = executor.list( criteria ).stream()
+                .map( QueryEntity::getScore )
+                .collect( Collectors.toList() );
+
+        assertThat( scores ).containsExactly( 22, 20, 18, 16, 14 ).inOrder();
+    }
+
+    @Test
+    public void countAndFetchDisjunctive()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .or( new SimpleExpression( "name", "name-1", "=" ),
+                        new SimpleExpression( "score", 2, "<=" ),
+                        new SimpleExpression( "score", 24, ">=" ) );
+
+        assertThat( executor.count( criteria ) ).isEqualTo( 4 );
+        assertThat( executor.fetchIds( criteria ) ).containsExactly( 1L, 2L, 24L, 25L ).inOrder();
+        assertThat( executor.first( criteria ).getId() ).isEqualTo( 1L );
+    }
+
+    @Test( expectedExceptions = UnsupportedOperationException.class )
+    public void pageDisjunctive()
+    {
+        executor.page( Criteria.of( QueryEntity.class )
+                .or( new SimpleExpression( "score", 1, "=" ), new SimpleExpression( "score", 2, "=" ) )
+                .limit( 10 ) );
+    }
+
+    @Test
+    public void countUpToMax()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).equal( "category", "odd" );
+
+        assertThat( executor.count( criteria, 5 ) ).isEqualTo( 5 );
+        assertThat( executor.count( criteria, 100 ) ).isEqualTo( 13 );
+        assertThat( executor.count( criteria.limit( 3 ), 5 ) ).isEqualTo( 3 );
+
+        Criteria<QueryEntity> disjunctive = Criteria.of( QueryEntity.class )
+                .or( new SimpleExpression( "score", 5, "<=" ), new SimpleExpression( "score", 20, ">=" ) );
+
+        assertThat( executor.count( disjunctive, 7 ) ).isEqualTo( 7 );
+        assertThat( executor.count( disjunctive, 20 ) ).isEqualTo( 11 );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void countUpToZero()
+    {
+        executor.count( Criteria.of( QueryEntity.class ), 0 );
+    }
+
+    @Test
+    public void asyncFanOut()
+    {
+        CompletableFuture<List<QueryEntity>> list = executor.listAsync( Criteria.of( QueryEntity.class )
+                .equal( "category", "even" ).ascending( "score" ).limit( 2 ) );
+        CompletableFuture<QueryEntity> first = executor.firstAsync( Criteria.of( QueryEntity.class )
+                .descending( "score" ) );
+        CompletableFuture<Integer> count = executor.countAsync( Criteria.of( QueryEntity.class )
+                .equal( "category", "odd" ) );
+        CompletableFuture<List<Long>> ids = executor.fetchIdsAsync( Criteria.of( QueryEntity.class )
+                .lt( "score", 4 ) );
+
+        CompletableFuture.allOf( list, first, count, ids ).join();
+
+        assertThat( list.join().stream().map( QueryEntity::getScore ).collect( Collectors.toList() ) )
+                .containsExactly( 2, 4 ).inOrder();
+        assertThat( first.join().getScore() ).isEqualTo( 25 );
+        assertThat( count.join() ).isEqualTo( 13 );
+        assertThat( ids.join() ).containsExactly( 1L, 2L, 3L ).inOrder();
+    }
+
+    @Test
+    public void compiledWithParameters()
+    {
+        CompiledCriteria<QueryEntity> compiled = executor.compile( Criteria.of( QueryEntity.class )
+                .equal( "category", Parameter.of( "category" ) )
+                .gt( "score", Parameter.of( "min" ) )
+                .ascending( "score" )
+                .limit( 3 ) );
+
+        List<Integer> scores = compiled.list( ImmutableMap.of( "category", "odd", "min", 10 ) ).stream()
+                .map( QueryEntity::getScore )
+                .collect( Collectors.toList() );
+
+        assertThat( scores ).containsExactly( 11, 13, 15 ).inOrder();
+        assertThat( compiled.first( ImmutableMap.of( "category", "even", "min", 20 ) ).getScore() ).isEqualTo( 22 );
+        assertThat( compiled.count( ImmutableMap.of( "category", "even", "min", 20 ) ) ).isEqualTo( 3 );
+        assertThat( compiled.fetchIds( ImmutableMap.of( "category", "odd", "min", 20 ) ) )
+                .containsExactly( 21L, 23L, 25L ).inOrder();
+
+        // the same shape shares the compiled instance
+        CompiledCriteria<QueryEntity> same = executor.compile( Criteria.of( QueryEntity.class )
+                .equal( "category", Parameter.of( "category" ) )
+                .gt( "score", Parameter.of( "min" ) )
+                .ascending( "score" )
+                .limit( 3 ) );
+
+        assertThat( same ).isSameInstanceAs( compiled );
+    }
+
+    @Test
+    public void compiledInParameter()
+    {
+        CompiledCriteria<QueryEntity> compiled = executor.compile( Criteria.of( QueryEntity.class )
+                .in( "name", new Object[]{Parameter.of( "names" )} ) );
+
+        List<Long> ids = compiled.fetchIds( ImmutableMap.of( "names", ImmutableList.of( "name-3", "name-7" ) ) );
+        assertThat( ids ).containsExactly( 3L, 7L );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void compiledMissingParameter()
+    {
+        executor.compile( Criteria.of( QueryEntity.class ).equal( "category", Parameter.of( "category" ) ) )
+                .list( ImmutableMap.of() );
+    }
+
+    @Test
+    public void compiledPerHint()
+    {
+        CompiledCriteria<QueryEntity> hybrid = executor.compile( Criteria.of( QueryEntity.class )
+                .equal( "category", Parameter.of( "category" ) )
+                .hybrid( true ) );
+
+        CompiledCriteria<QueryEntity> full = executor.compile( Criteria.of( QueryEntity.class )
+                .equal( "category", Parameter.of( "category" ) )
+                .hybrid( false ) );
+
+        assertThat( full ).isNotSameInstanceAs( hybrid );
+        assertThat( full.count( ImmutableMap.of( "category", "odd" ) ) ).isEqualTo( 13 );
+        assertThat( hybrid.count( ImmutableMap.of( "category", "odd" ) ) ).isEqualTo( 13 );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void compiledWithCursor()
+    {
+        executor.compile( Criteria.of( QueryEntity.class ).limit( 10 ).cursor( "cursor" ) );
+    }
+
+    @Test
+    public void streamIdsAsArray()
+    {
+        long[] ids = executor.streamIds( Criteria.of( QueryEntity.class ).equal( "category", "even" ) ).toArray();
+
+        assertThat( ids ).hasLength( ENTITIES / 2 );
+        assertThat( ids[0] ).isEqualTo( 2L );
+        assertThat( ids[ids.length - 1] ).isEqualTo( 24L );
+    }
+
+    @Test
+    public void streamIdChunksResumable()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).chunk( 10 );
+
+        List<IdChunk> chunks = executor.streamIdChunks( criteria ).collect( Collectors.toList() );
+        assertThat( chunks ).hasSize( 3 );
+        assertThat( chunks.get( 0 ).getIds() ).hasLength( 10 );
+        assertThat( chunks.get( 2 ).getIds() ).hasLength( 5 );
+
+        // resume the scan right after the first chunk
+        long[] resumed = executor.streamIdChunks( criteria.cursor( chunks.get( 0 ).getCursor() ) )
+                .findFirst()
+                .map( IdChunk::getIds )
+                .orElseThrow( IllegalStateException::new );
+
+        assertThat( resumed ).isEqualTo( chunks.get( 1 ).getIds() );
+
+        // the cursor already includes the offset
+        Criteria<QueryEntity> offset = Criteria.of( QueryEntity.class ).offset( 5 ).chunk( 10 );
+        List<IdChunk> skipped = executor.streamIdChunks( offset ).collect( Collectors.toList() );
+        assertThat( skipped ).hasSize( 2 );
+        assertThat( skipped.get( 0 ).getIds()[0] ).isEqualTo( 6L );
+
+        long[] continued = executor.streamIdChunks( offset.cursor( skipped.get( 0 ).getCursor() ) )
+                .findFirst()
+                .map( IdChunk::getIds )
+                .orElseThrow( IllegalStateException::new );
+
+        assertThat( continued ).isEqualTo( skipped.get( 1 ).getIds() );
+        assertThat( continued[0] ).isEqualTo( 16L );
+    }
+
+    @Test
+    public void likeByDerivedProperties()
+    {
+        List<Long> end = executor.fetchIds( Criteria.of( QueryEntity.class ).ilike( "name", "E-15", MatchMode.END ) );
+        assertThat( end ).containsExactly( 15L );
+
+        int even = executor.count( Criteria.of( QueryEntity.class ).like( "category", "ven", MatchMode.END ) );
+        assertThat( even ).isEqualTo( 12 );
+
+        List<Long> anywhere = executor.fetchIds( Criteria.of( QueryEntity.class )
+                .ilike( "name", "E-2", MatchMode.ANYWHERE ) );
+        assertThat( anywhere ).containsExactly( 2L, 20L, 21L, 22L, 23L, 24L, 25L );
+
+        QueryEntity exact = executor.first( Criteria.of( QueryEntity.class )
+                .ilike( "name", "NAME-7", MatchMode.EXACT ) );
+        assertThat( exact.getId() ).isEqualTo( 7L );
+    }
+
+    @Test
+    public void likeAnywhereMatchedAsWhole()
+    {
+        ofy().save().entity( new QueryEntity( 26, "abc-bcd", "even", 26 ) ).now();
+        ofy().save().entity( new QueryEntity( 27, "x-abcd-x", "odd", 27 ) ).now();
+
+        // all trigrams are present in both, but only one contains the value
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).ilike( "name", "abcd", MatchMode.ANYWHERE );
+        assertThat( CriteriaPlanner.plan( criteria ).hasResidual() ).isTrue();
+        assertThat( executor.fetchIds( criteria ) ).containsExactly( 27L );
+        assertThat( executor.count( criteria ) ).isEqualTo( 1 );
+    }
+
+    @Test( expectedExceptions = UnsupportedOperationException.class )
+    public void ignoreCaseLikeStartRequiresIndex()
+    {
+        new ObjectifyCriteriaBuilder<QueryEntity>().build( Criteria.of( QueryEntity.class )
+                .ilike( "category", "EV", MatchMode.START ) );
+    }
+
+    @Test
+    public void likeWithoutMatchingIndex()
+    {
+        // case sensitive, not served by the ignore case index, thus evaluated in memory
+        List<Long> ids = executor.fetchIds( Criteria.of( QueryEntity.class ).like( "name", "-5", MatchMode.END ) );
+        assertThat( ids ).containsExactly( 5L, 15L, 25L );
+    }
+
+    @Test
+    public void ignoreCaseLikeWithoutMatchingIndex()
+    {
+        ofy().save().entity( new QueryEntity( 26, "name-26", "EVEN", 26 ) ).now();
+        ofy().save().entity( new QueryEntity( 27, "name-27", "Evening", 27 ) ).now();
+
+        // the category index is case sensitive, thus evaluated in memory
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).ilike( "category", "eVe", MatchMode.START );
+        assertThat( CriteriaPlanner.plan( criteria ).hasResidual() ).isTrue();
+
+        List<Long> ids = executor.fetchIds( criteria );
+        assertThat( ids ).hasSize( ENTITIES / 2 + 2 );
+        assertThat( ids ).containsAtLeast( 2L, 26L, 27L );
+    }
+
+    @Test
+    public void residualFilters()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .equal( "category", "odd" )
+                .ge( "score", 5 )
+                .lt( "name", "name-2" )
+                .notLike( "name", "name-1", MatchMode.EXACT )
+                .neProperty( "name", "category" )
+                .ascending( "score" )
+                .offset( 1 )
+                .limit( 3 );
+
+        List<Integer> scores = executor.list( criteria ).stream()
+                .map( QueryEntity::getScore )
+                .collect( Collectors.toList() );
+
+        // odd scores >= 5 with name lower than 'name-2': 11, 13, 15, 17, 19
+        assertThat( scores ).containsExactly( 13, 15, 17 ).inOrder();
+        assertThat( executor.count( criteria ) ).isEqualTo( 3 );
+        assertThat( executor.count( criteria, 2 ) ).isEqualTo( 2 );
+        assertThat( executor.first( criteria ).getScore() ).isEqualTo( 13 );
+        assertThat( executor.streamIds( criteria ).toArray() ).asList().containsExactly( 13L, 15L, 17L ).inOrder();
+        assertThat( executor.explain( criteria ) ).contains( "Inequality property: score" );
+    }
+
+    @Test
+    public void inLargeList()
+    {
+        List<Integer> values = new ArrayList<>();
+        for ( int score = 300; score > 0; score-- )
+        {
+            values.add( score );
+        }
+
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class )
+                .in( "score", values )
+                .descending( "score" )
+                .limit( 5 );
+
+        List<Integer> scores = executor.list( criteria ).stream()
+                .map( QueryEntity::getScore )
+                .collect( Collectors.toList() );
+
+        assertThat( scores ).containsExactly( 25, 24, 23, 22, 21 ).inOrder();
+        assertThat( executor.count( Criteria.of( QueryEntity.class ).in( "score", values ) ) ).isEqualTo( ENTITIES );
+        assertThat( executor.fetchIds( Criteria.of( QueryEntity.class )
+                .equal( "category", "even" )
+                .in( "score", new Object[]{1, 2, 3, 4} ) ) ).containsExactly( 2L, 4L ).inOrder();
+    }
+
+    @Test
+    public void projection()
+    {
+        List<Map<String, Object>> rows = executor.project( Criteria.of( QueryEntity.class )
+                .equal( "category", "even" )
+                .project( "name", "score" )
+                .ascending( "score" )
+                .limit( 3 ) );
+
+        assertThat( rows ).containsExactly(
+                ImmutableMap.of( "name", "name-2", "score", 2 ),
+                ImmutableMap.of( "name", "name-4", "score", 4 ),
+                ImmutableMap.of( "name", "name-6", "score", 6 ) ).inOrder();
+
+        List<Map<String, Object>> categories = executor.project( Criteria.of( QueryEntity.class )
+                .project( "category" )
+                .distinct( true )
+                .ascending( "category" ) );
+
+        assertThat( categories ).containsExactly(
+                ImmutableMap.of( "category", "even" ),
+                ImmutableMap.of( "category", "odd" ) ).inOrder();
+    }
+
+    @Test
+    public void projectionWithResidualFilter()
+    {
+        List<Map<String, Object>> rows = executor.project( Criteria.of( QueryEntity.class )
+                .notEqual( "category", "odd" )
+                .project( "name" )
+                .limit( 2 ) );
+
+        assertThat( rows ).containsExactly( ImmutableMap.of( "name", "name-2" ), ImmutableMap.of( "name", "name-4" ) )
+                .inOrder();
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void projectionWithoutProperties()
+    {
+        executor.project( Criteria.of( QueryEntity.class ) );
+    }
+
+    @Test
+    public void idInLookup()
+    {
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).idIn( "id", new Long[]{7L, 3L, 99L, 3L, 5L} );
+
+        List<Long> ids = executor.list( criteria ).stream().map( QueryEntity::getId ).collect( Collectors.toList() );
+        assertThat( ids ).containsExactly( 3L, 5L, 7L ).inOrder();
+        assertThat( executor.count( criteria ) ).isEqualTo( 3 );
+
+        criteria.equal( "category", "odd" ).descending( "score" ).limit( 2 );
+        assertThat( executor.fetchIds( criteria ) ).containsExactly( 7L, 5L ).inOrder();
+        assertThat( executor.first( criteria ).getId() ).isEqualTo( 7L );
+    }
+
+    @Test
+    public void idInLookupInBatches()
+    {
+        Long[] ids = new Long[KeyLookup.MAX_BATCH + 500];
+        for ( int index = 0; index < ids.length; index++ )
+        {
+            ids[index] = ( long ) index + 1;
+        }
+        Criteria<QueryEntity> criteria = Criteria.of( QueryEntity.class ).idIn( "id", ids );
+
+        assertThat( executor.streamIds( criteria ).toArray() ).hasLength( ENTITIES );
+        assertThat( executor.explain( criteria ) ).contains( "Key lookup: 1500 keys in 2 batch get(s)" );
+    }
+
+    @Test( expectedExceptions = UnsupportedOperationException.class )
+    public void pageWithIdIn()
+    {
+        executor.page( Criteria.of( QueryEntity.class ).idIn( "id", new Long[]{1L, 2L} ).limit( 10 ) );
+    }
+
+    @Test( expectedExceptions = UnsupportedOperationException.class )
+    public void pageWithResidualFilter()
+    {
+        executor.page( Criteria.of( QueryEntity.class ).notEqual( "category", "odd" ).limit( 10 ) );
+    }
+
+    @Test
+    public void queryResultCacheInvalidatedOnSaveAndDelete() throws InterruptedException
+    {
+        new CachedQueryEntity( 1, "even" ).save();
+        new CachedQueryEntity( 2, "even" ).save();
+        Criteria<CachedQueryEntity> criteria = Criteria.of( CachedQueryEntity.class ).equal( "category", "even" );
+
+        // right after the save the result is not cached yet, as the write might not have been committed
+        assertThat( executor.count( criteria ) ).isEqualTo( 2 );
+        ofy().delete().type( CachedQueryEntity.class ).id( 2 ).now();
+        assertThat( executor.count( criteria ) ).isEqualTo( 1 );
+
+        Thread.sleep( QueryResultCache.SETTLE_MILLIS + 100 );
+        assertThat( executor.count( criteria ) ).isEqualTo( 1 );
+
+        // once settled, the cached count is served until the next save or delete of the kind
+        ofy().load().type( CachedQueryEntity.class ).id( 1 ).now().delete();
+        assertThat( executor.count( Criteria.of( CachedQueryEntity.class ).equal( "category", "even" ) ) )
+                .isEqualTo( 0 );
+
+        new CachedQueryEntity( 3, "even" ).save();
+        assertThat( executor.count( criteria ) ).isEqualTo( 1 );
+        assertThat( executor.fetchIds( criteria ) ).containsExactly( 3L );
+    }
+
+    @Test
+    public void queryResultCacheSkipsDeleted()
+    {
+        new CachedQueryEntity( 1, "odd" ).save();
+        new CachedQueryEntity( 2, "odd" ).save();
+        Criteria<CachedQueryEntity> criteria = Criteria.of( CachedQueryEntity.class ).equal( "category", "odd" );
+
+        assertThat( executor.list( criteria ) ).hasSize( 2 );
+
+        ofy().delete().type( CachedQueryEntity.class ).id( 1 ).now();
+        ofy().clear();
+
+        List<CachedQueryEntity> list = executor.list( criteria );
+        assertThat( list ).hasSize( 1 );
+        assertThat( list.get( 0 ).getId() ).isEqualTo( 2L );
+        assertThat( executor.count( criteria ) ).isEqualTo( 1 );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void pageWithoutLimit()
+    {
+        executor.page( Criteria.of( QueryEntity.class ) );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void pageWithInvalidCursor()
+    {
+        executor.page( Criteria.of( QueryEntity.class ).limit( 10 ).cursor( "invalid cursor" ) );
+    }
+}
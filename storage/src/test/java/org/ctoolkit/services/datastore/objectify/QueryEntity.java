@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020 TurnOnline.biz s.r.o. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+
+package org.ctoolkit.services.datastore.objectify;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Index;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+/**
+ * The entity to test criteria queries.
+ *
+ * @author <a href="mailto:medvegy@turnonline.biz">Aurel Medvegy</a>
+ */
+@Entity
+public class QueryEntity
+        extends EntityLongIdentity
+{
+    private static final long serialVersionUID = 1L;
+
+    @Index
+    @LikeIndex( ignoreCase = true, anywhere = true )
+    private String name;
+
+    @Index
+    @LikeIndex
+    private String category;
+
+    @Index
+    private Integer score;
+
+    QueryEntity()
+    {
+    }
+
+    public QueryEntity( long id, String name, String category, Integer score )
+    {
+        setId( id );
+        this.name = name;
+        this.category = category;
+        this.score = score;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getCategory()
+    {
+        return category;
+    }
+
+    public Integer getScore()
+    {
+        return score;
+    }
+
+    @Override
+    protected long getModelVersion()
+    {
+        return 1;
+    }
+
+    @Override
+    public void save()
+    {
+        ofy().save().entity( this ).now();
+    }
+
+    @Override
+    public void delete()
+    {
+        ofy().delete().entity( this ).now();
+    }
+}